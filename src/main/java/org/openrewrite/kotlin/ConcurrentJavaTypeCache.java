@@ -0,0 +1,129 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.kotlin;
+
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.java.internal.JavaTypeCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * A type cache that can be shared by parsers running on several threads, for example by the parsers of the
+ * modules of a multi-module build, so that library types are built once.
+ * <p>
+ * Reads and writes are safe from any thread. {@link KotlinTypeMapping} builds types while holding the cache as its
+ * lock, so each type is built once. The types put while building are only visible to the building thread until the
+ * outermost construction completes, so other threads look up types without taking the lock and only ever see
+ * complete types.
+ * <p>
+ * Construction is serialized by that one lock rather than by lock striping or per-signature futures, which would
+ * deadlock: building a class builds the types of its supertypes and members, which refer back to it or to other
+ * classes being built. Two threads that started building two classes referring to each other would each wait for
+ * the signature the other one holds. Since lookups of complete types do not take the lock, only the first mapping
+ * of each type contends for it.
+ * <p>
+ * Unlike a {@link JavaTypeCache}, {@link KotlinParser.Builder#clone()} shares this cache instead of copying it.
+ */
+public class ConcurrentJavaTypeCache extends JavaTypeCache {
+    private final Map<String, Object> types;
+
+    /**
+     * The signatures of the types put by the {@link #builder} thread while it holds the cache as its lock, which are
+     * staged in the map inherited from {@link JavaTypeCache} and published to {@link #types} once its outermost
+     * construction completes.
+     */
+    private final List<String> building = new ArrayList<>();
+
+    private volatile @Nullable Thread builder;
+    private int constructionDepth;
+
+    public ConcurrentJavaTypeCache() {
+        this(new ConcurrentHashMap<>());
+    }
+
+    private ConcurrentJavaTypeCache(Map<String, Object> types) {
+        this.types = types;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> @Nullable T get(String signature) {
+        if (builder == Thread.currentThread()) {
+            T type = super.get(signature);
+            if (type != null) {
+                return type;
+            }
+        }
+        return (T) types.get(signature);
+    }
+
+    @Override
+    public void put(String signature, Object o) {
+        if (builder == Thread.currentThread()) {
+            building.add(signature);
+            super.put(signature, o);
+        } else {
+            types.put(signature, o);
+        }
+    }
+
+    /**
+     * Called by a type mapping holding the cache as its lock before it builds types.
+     */
+    void beginConstruction() {
+        if (constructionDepth++ == 0) {
+            builder = Thread.currentThread();
+        }
+    }
+
+    /**
+     * Called by a type mapping holding the cache as its lock after it built types. Publishes the types once the
+     * outermost construction completes, since types further up the stack are not complete before.
+     */
+    void endConstruction() {
+        if (--constructionDepth == 0) {
+            for (String signature : building) {
+                types.put(signature, super.get(signature));
+            }
+            building.clear();
+            super.clear();
+            builder = null;
+        }
+    }
+
+    @Override
+    public void clear() {
+        types.clear();
+    }
+
+    @Override
+    public int size() {
+        return types.size();
+    }
+
+    void forEach(BiConsumer<String, Object> action) {
+        types.forEach(action);
+    }
+
+    @Override
+    public ConcurrentJavaTypeCache clone() {
+        return new ConcurrentJavaTypeCache(new ConcurrentHashMap<>(types));
+    }
+}
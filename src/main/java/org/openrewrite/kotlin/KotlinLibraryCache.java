@@ -0,0 +1,148 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.kotlin;
+
+import lombok.Getter;
+import org.openrewrite.kotlin.internal.ClasspathFingerprint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * A directory of library symbol archives shared by the runs of {@link KotlinParser}s.
+ * <p>
+ * The FIR library session resolves library classes from the class headers, Kotlin metadata and package part
+ * mappings ({@code META-INF/*.kotlin_module}) of the classpath jars, and has no entry point for a serialized
+ * symbol table. What a later run can reuse instead is the jar itself: the first parser that sees a jar writes
+ * an archive of just the entries the compiler resolves symbols from, uncompressed and ordered by package, and
+ * named after the content hash of the jar. Every later run, on any machine that shares the directory and in any
+ * location of the jar, resolves against that archive instead. The compiler then maps the archive into memory and
+ * reads class headers and metadata straight from the mapping, instead of inflating them from the original jar and
+ * scanning past its resources.
+ * <p>
+ * Directories on the classpath are used as they are, since they are typically build outputs that change on every build.
+ */
+public class KotlinLibraryCache {
+    private static final String ARCHIVE_EXTENSION = ".jar";
+
+    @Getter
+    private final Path directory;
+
+    public KotlinLibraryCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return The symbol archive of a classpath jar, written on first use, or the classpath entry itself if it
+     * is not a jar or the archive cannot be written.
+     */
+    public Path resolve(Path classpathEntry) {
+        if (!Files.isRegularFile(classpathEntry)) {
+            return classpathEntry;
+        }
+        Path archive = directory.resolve(ClasspathFingerprint.of(singletonList(classpathEntry)).getHash() + ARCHIVE_EXTENSION);
+        if (Files.isRegularFile(archive)) {
+            return archive;
+        }
+        try {
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, "symbols", ".tmp");
+            try {
+                writeSymbolArchive(classpathEntry, temp);
+                try {
+                    Files.move(temp, archive, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, archive, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            return archive;
+        } catch (FileAlreadyExistsException e) {
+            // Another run wrote the same archive concurrently
+            return archive;
+        } catch (IOException e) {
+            // The cache only saves work, so resolution falls back to the jar
+            return classpathEntry;
+        }
+    }
+
+    private static void writeSymbolArchive(Path jar, Path archive) throws IOException {
+        try (ZipFile zip = new ZipFile(jar.toFile());
+             ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive))) {
+            List<ZipEntry> entries = new ArrayList<>();
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+                ZipEntry entry = e.nextElement();
+                if (!entry.isDirectory() && isSymbolEntry(entry.getName())) {
+                    entries.add(entry);
+                }
+            }
+            // Keeps the entries of a package next to each other in the central directory
+            entries.sort((e1, e2) -> e1.getName().compareTo(e2.getName()));
+
+            out.setMethod(ZipOutputStream.STORED);
+            for (ZipEntry entry : entries) {
+                byte[] bytes;
+                try (InputStream is = zip.getInputStream(entry)) {
+                    bytes = readAllBytes(is);
+                }
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                ZipEntry stored = new ZipEntry(entry.getName());
+                stored.setMethod(ZipEntry.STORED);
+                stored.setSize(bytes.length);
+                stored.setCompressedSize(bytes.length);
+                stored.setCrc(crc.getValue());
+                out.putNextEntry(stored);
+                out.write(bytes);
+                out.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * The entries the compiler resolves library symbols from. The manifest is kept for its {@code Multi-Release}
+     * attribute, and versioned class files under {@code META-INF/versions} are class files like any other.
+     */
+    private static boolean isSymbolEntry(String name) {
+        return name.endsWith(".class") ||
+               name.endsWith(".kotlin_module") ||
+               name.endsWith(".kotlin_builtins") ||
+               name.endsWith(".kotlin_metadata") ||
+               name.equals("META-INF/MANIFEST.MF");
+    }
+
+    private static byte[] readAllBytes(InputStream is) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = is.read(buffer)) != -1) {
+            bytes.write(buffer, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+}
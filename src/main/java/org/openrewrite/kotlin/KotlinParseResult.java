@@ -0,0 +1,162 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.kotlin;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.Parser;
+import org.openrewrite.SourceFile;
+import org.openrewrite.kotlin.internal.KotlinLookupRecorder;
+
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * The result of {@link KotlinParser#parseIncrementally(Iterable, Path, org.openrewrite.ExecutionContext)}, which
+ * can be passed to {@link KotlinParser#reparse(KotlinParseResult, Iterable, Collection, Path, org.openrewrite.ExecutionContext)}
+ * to convert only the sources that changed and the sources that depend on them.
+ * <p>
+ * Besides the parsed sources, the result keeps the names each source declares and the names it looked up
+ * while it was resolved.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class KotlinParseResult {
+    /**
+     * In input order.
+     */
+    private final Map<Path, Entry> entries;
+
+    /**
+     * The paths of the sources that were converted to LSTs by the parse that produced this result.
+     * All other sources were reused from the previous result.
+     */
+    @Getter
+    private final Set<Path> converted;
+
+    public List<SourceFile> getSourceFiles() {
+        List<SourceFile> sourceFiles = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            sourceFiles.add(Objects.requireNonNull(entry.getSourceFile()));
+        }
+        return sourceFiles;
+    }
+
+    public @Nullable SourceFile getSourceFile(Path path) {
+        Entry entry = entries.get(path);
+        return entry == null ? null : entry.getSourceFile();
+    }
+
+    List<Parser.Input> getInputs() {
+        List<Parser.Input> inputs = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            inputs.add(entry.getInput());
+        }
+        return inputs;
+    }
+
+    @Nullable
+    Entry getEntry(Path path) {
+        return entries.get(path);
+    }
+
+    /**
+     * Finds the sources of {@code current} that must be converted again because they are one of the {@code changed}
+     * sources or transitively look up a name declared by one of them, either before or after the change.
+     */
+    static Set<Path> affectedBy(Set<Path> changed, Map<Path, Entry> current, @Nullable KotlinParseResult previous) {
+        Map<String, Set<Path>> providers = new HashMap<>();
+        for (Map.Entry<Path, Entry> entry : current.entrySet()) {
+            entry.getValue().indexDeclarations(entry.getKey(), providers);
+        }
+        if (previous != null) {
+            for (Path path : changed) {
+                Entry before = previous.getEntry(path);
+                if (before != null) {
+                    before.indexDeclarations(path, providers);
+                }
+            }
+        }
+
+        Map<Path, Set<Path>> dependents = new HashMap<>();
+        for (Map.Entry<Path, Entry> entry : current.entrySet()) {
+            Path dependent = entry.getKey();
+            for (String lookup : entry.getValue().getLookups()) {
+                addDependent(providers.get(lookup), dependent, dependents);
+                addDependent(providers.get(KotlinLookupRecorder.scopeOf(lookup)), dependent, dependents);
+            }
+        }
+
+        Set<Path> affected = new LinkedHashSet<>();
+        Deque<Path> queue = new ArrayDeque<>(changed);
+        while (!queue.isEmpty()) {
+            Path path = queue.pop();
+            if (affected.add(path)) {
+                queue.addAll(dependents.getOrDefault(path, Collections.emptySet()));
+            }
+        }
+        affected.retainAll(current.keySet());
+        return affected;
+    }
+
+    private static void addDependent(@Nullable Set<Path> providers, Path dependent, Map<Path, Set<Path>> dependents) {
+        if (providers != null) {
+            for (Path provider : providers) {
+                if (!provider.equals(dependent)) {
+                    dependents.computeIfAbsent(provider, k -> new HashSet<>()).add(dependent);
+                }
+            }
+        }
+    }
+
+    @Value
+    static class Entry {
+        Parser.Input input;
+
+        /**
+         * Only null while the parse that creates the entry is in progress, which reserves the position of each source
+         * before it is converted.
+         */
+        @Nullable
+        SourceFile sourceFile;
+
+        /**
+         * Top level declarations as {@code packageFqName#name}.
+         */
+        Set<String> declaredNames;
+
+        /**
+         * The fully qualified names of the declared classes, which are the scopes of member lookups.
+         */
+        Set<String> declaredScopes;
+
+        /**
+         * As recorded by {@link KotlinLookupRecorder}.
+         */
+        Set<String> lookups;
+
+        void indexDeclarations(Path path, Map<String, Set<Path>> providers) {
+            for (String name : declaredNames) {
+                providers.computeIfAbsent(name, k -> new HashSet<>()).add(path);
+            }
+            for (String scope : declaredScopes) {
+                providers.computeIfAbsent(scope, k -> new HashSet<>()).add(path);
+            }
+        }
+    }
+}
@@ -21,8 +21,8 @@ import kotlin.annotation.AnnotationTarget;
 import kotlin.jvm.functions.Function1;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import org.intellij.lang.annotations.Language;
-import org.jetbrains.kotlin.KtRealPsiSourceElement;
 import org.jetbrains.kotlin.cli.common.arguments.K2JVMCompilerArguments;
 import org.jetbrains.kotlin.cli.common.messages.AnalyzerWithCompilerReport;
 import org.jetbrains.kotlin.cli.common.messages.MessageCollector;
@@ -38,7 +38,6 @@ import org.jetbrains.kotlin.com.intellij.openapi.vfs.StandardFileSystems;
 import org.jetbrains.kotlin.com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.kotlin.com.intellij.openapi.vfs.VirtualFileManager;
 import org.jetbrains.kotlin.com.intellij.psi.FileViewProvider;
-import org.jetbrains.kotlin.com.intellij.psi.PsiElement;
 import org.jetbrains.kotlin.com.intellij.psi.PsiManager;
 import org.jetbrains.kotlin.com.intellij.psi.SingleRootFileViewProvider;
 import org.jetbrains.kotlin.com.intellij.psi.search.GlobalSearchScope;
@@ -56,11 +55,15 @@ import org.jetbrains.kotlin.fir.session.FirSessionFactoryHelper;
 import org.jetbrains.kotlin.fir.session.environment.AbstractProjectFileSearchScope;
 import org.jetbrains.kotlin.idea.KotlinFileType;
 import org.jetbrains.kotlin.idea.KotlinLanguage;
+import org.jetbrains.kotlin.incremental.components.LookupTracker;
 import org.jetbrains.kotlin.load.kotlin.PackagePartProvider;
 import org.jetbrains.kotlin.modules.Module;
 import org.jetbrains.kotlin.name.Name;
 import org.jetbrains.kotlin.platform.jvm.JvmPlatforms;
+import org.jetbrains.kotlin.psi.KtClassOrObject;
+import org.jetbrains.kotlin.psi.KtDeclaration;
 import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.psi.KtNamedDeclaration;
 import org.jetbrains.kotlin.resolve.jvm.platform.JvmPlatformAnalyzerServices;
 import org.jetbrains.kotlin.utils.PathUtil;
 import org.jspecify.annotations.Nullable;
@@ -69,10 +72,18 @@ import org.openrewrite.internal.ListUtils;
 import org.openrewrite.java.JavaParser;
 import org.openrewrite.java.internal.JavaTypeCache;
 import org.openrewrite.java.marker.JavaSourceSet;
+import org.openrewrite.java.tree.JavaType;
+import org.openrewrite.kotlin.internal.ClassIdSymbolCache;
+import org.openrewrite.kotlin.internal.ClasspathFingerprint;
+import org.openrewrite.kotlin.internal.InvalidatingJavaTypeCache;
+import org.openrewrite.kotlin.internal.KotlinChunkPlanner;
 import org.openrewrite.kotlin.internal.CompiledSource;
+import org.openrewrite.kotlin.internal.KotlinCompilerEnvironment;
+import org.openrewrite.kotlin.internal.KotlinLookupRecorder;
 import org.openrewrite.kotlin.internal.KotlinSource;
 import org.openrewrite.kotlin.internal.KotlinTreeParserVisitor;
 import org.openrewrite.kotlin.internal.PsiElementAssociations;
+import org.openrewrite.kotlin.internal.ReadThroughJavaTypeCache;
 import org.openrewrite.kotlin.tree.K;
 import org.openrewrite.style.NamedStyles;
 import org.openrewrite.tree.ParseError;
@@ -85,12 +96,23 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
 import static java.util.stream.Collectors.toList;
 import static org.jetbrains.kotlin.cli.common.CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY;
 import static org.jetbrains.kotlin.cli.common.messages.MessageRenderer.PLAIN_FULL_PATHS;
@@ -126,6 +148,30 @@ public class KotlinParser implements Parser {
     private final KotlinLanguageLevel languageLevel;
     private final boolean isKotlinScript;
 
+    @Nullable
+    private final KotlinParserSessionPool sessionPool;
+
+    @Nullable
+    private final ExecutorService conversionExecutor;
+
+    private final boolean orderedResults;
+    private final boolean syntaxOnly;
+    private final long heapBudget;
+    private final int libraryTypeDepth;
+
+    @Nullable
+    private final KotlinLibraryCache libraryCache;
+
+    /**
+     * The library classes that were mapped beyond the {@link #libraryTypeDepth} and not completed yet.
+     */
+    private final Set<JavaType.Class> shallowClasses = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    private final LongAdder memoHits = new LongAdder();
+    private final LongAdder memoMisses = new LongAdder();
+    private final LongAdder symbolCacheHits = new LongAdder();
+    private final LongAdder symbolCacheMisses = new LongAdder();
+
     @Override
     public Stream<SourceFile> parse(@Language("kotlin") String... sources) {
         Pattern packagePattern = Pattern.compile("^package\\s+([^;]+);");
@@ -158,56 +204,398 @@ public class KotlinParser implements Parser {
         );
     }
 
+    /**
+     * Resolves all sources in a single compilation and lazily converts them to LSTs as the returned stream is consumed.
+     * <p>
+     * Each source's per-file parser state (its {@link KotlinSource}, node index and PSI to FIR associations) becomes
+     * unreachable as soon as its LST is emitted. The PSI and FIR of the whole batch however stay reachable through
+     * the FIR session until the stream has been fully consumed, so the peak memory of a parse is roughly the PSI and FIR of
+     * all inputs, plus the per-file state of the sources being converted (one, or with a
+     * {@link Builder#conversionExecutor(ExecutorService) conversion executor} up to twice as many as it runs concurrently,
+     * which are submitted as the stream is consumed), plus the LSTs that have been converted but not yet consumed.
+     * To bound the PSI and FIR part, configure a
+     * {@link Builder#heapBudget(long) heap budget}.
+     */
     @Override
     public Stream<SourceFile> parseInputs(Iterable<Input> sources, @Nullable Path relativeTo, ExecutionContext ctx) {
+        List<Input> inputs = acceptedInputs(sources).collect(toList());
+        if (heapBudget <= 0) {
+            return parseBatch(inputs, emptyList(), emptyMap(), relativeTo, ctx);
+        }
+        List<KotlinChunkPlanner.Chunk> chunks = new KotlinChunkPlanner(heapBudget).plan(inputs, ctx);
+        if (!orderedResults || chunks.size() == 1) {
+            return chunks.stream().flatMap(chunk -> parseBatch(chunk.getSources(), chunk.getContext(), chunk.getTexts(), relativeTo, ctx));
+        }
+        return parseChunksInInputOrder(inputs.size(), chunks, relativeTo, ctx);
+    }
+
+    /**
+     * Chunks group the inputs by package, so the LSTs of a chunk are held back until the LSTs of all inputs before
+     * them have been emitted. Each chunk is only parsed once the LSTs parsed so far do not include the next one.
+     * With ordered results, a batch emits exactly one LST per source in the order of its sources, so each LST is
+     * matched to the position of its input by that order rather than by its path, which need not be unique.
+     */
+    private Stream<SourceFile> parseChunksInInputOrder(int size, List<KotlinChunkPlanner.Chunk> chunks,
+                                                       @Nullable Path relativeTo, ExecutionContext ctx) {
+        Iterator<KotlinChunkPlanner.Chunk> remaining = chunks.iterator();
+        TreeMap<Integer, SourceFile> pending = new TreeMap<>();
+        int[] next = {0};
+        return Stream.generate(() -> {
+                    while (remaining.hasNext() && !pending.containsKey(next[0])) {
+                        KotlinChunkPlanner.Chunk chunk = remaining.next();
+                        Iterator<Integer> positions = chunk.getPositions().iterator();
+                        parseBatch(chunk.getSources(), chunk.getContext(), chunk.getTexts(), relativeTo, ctx)
+                                .forEachOrdered(sourceFile -> pending.put(positions.next(), sourceFile));
+                    }
+                    Map.Entry<Integer, SourceFile> first = pending.pollFirstEntry();
+                    if (first == null) {
+                        return null;
+                    }
+                    next[0] = first.getKey() + 1;
+                    return first.getValue();
+                })
+                .limit(size)
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * @param inputs  The sources to convert to LSTs.
+     * @param context Sources that take part in resolution only, in addition to the {@link #dependsOn} sources.
+     * @param texts   The texts of inputs that were already read, which are not read again.
+     */
+    private Stream<SourceFile> parseBatch(List<Input> inputs, List<Input> context, Map<Input, KotlinChunkPlanner.SourceText> texts,
+                                          @Nullable Path relativeTo, ExecutionContext ctx) {
         ParsingExecutionContextView pctx = ParsingExecutionContextView.view(ctx);
         ParsingEventListener parsingListener = pctx.getParsingListener();
 
-        // TODO: FIR and disposable may not be necessary using the IR.
-        Disposable disposable = Disposer.newDisposable();
         CompiledSource compilerCus;
-        List<Input> acceptedInputs = ListUtils.concatAll(dependsOn, acceptedInputs(sources).collect(toList()));
+        KotlinCompilerEnvironment environment = null;
+        KotlinParserSessionPool.Key poolKey = sessionPoolKey();
+        List<Input> acceptedInputs = ListUtils.concatAll(ListUtils.concatAll(dependsOn, context), inputs);
+        // Inputs from `dependsOn` only participate in resolution, so they are never converted to LSTs
+        Set<Input> dependencies = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (dependsOn != null) {
+            dependencies.addAll(dependsOn);
+        }
+        dependencies.addAll(context);
         try {
-            compilerCus = parse(acceptedInputs, disposable, pctx);
+            environment = acquireEnvironment(poolKey);
+            compilerCus = parse(acceptedInputs, environment, null, texts, pctx);
         } catch (Exception e) {
-            return acceptedInputs.stream().map(input -> ParseError.build(this, input, relativeTo, ctx, e));
+            if (environment != null) {
+                discardEnvironment(environment);
+            }
+            return acceptedInputs.stream()
+                    .filter(input -> !dependencies.contains(input))
+                    .map(input -> ParseError.build(this, input, relativeTo, ctx, e));
         }
 
-        FirSession firSession = compilerCus.getFirSession();
+        KotlinCompilerEnvironment compilerEnvironment = environment;
+        ClassIdSymbolCache symbolCache = symbolCache(compilerCus);
+        List<KotlinSource> kotlinSources = new ArrayList<>(compilerCus.getSources().size());
+        for (KotlinSource kotlinSource : compilerCus.getSources()) {
+            if (!dependencies.contains(kotlinSource.getInput())) {
+                kotlinSources.add(kotlinSource);
+            }
+        }
+        // Each source is removed from the list as it is converted, so that its node index, CRLF locations
+        // and associations can be collected while the remaining sources are still being consumed.
+        Stream<SourceFile> converted = conversionExecutor == null ?
+                IntStream.range(0, kotlinSources.size())
+                        .mapToObj(i -> convert(kotlinSources.set(i, null), typeCache, symbolCache, relativeTo, ctx, parsingListener)) :
+                convertConcurrently(kotlinSources, typeCache, symbolCache, orderedResults, relativeTo, ctx, parsingListener);
         return Stream.concat(
-                        compilerCus.getSources().stream()
-                                .map(kotlinSource -> {
-                                    try {
-                                        assert kotlinSource.getFirFile() != null;
-                                        assert kotlinSource.getFirFile().getSource() != null;
-                                        PsiElement psi = ((KtRealPsiSourceElement) kotlinSource.getFirFile().getSource()).getPsi();
-                                        AnalyzerWithCompilerReport.SyntaxErrorReport report =
-                                                AnalyzerWithCompilerReport.Companion.reportSyntaxErrors(psi, new PrintingMessageCollector(System.err, PLAIN_FULL_PATHS, true));
-                                        if (report.isHasErrors()) {
-                                            return ParseError.build(KotlinParser.this, kotlinSource.getInput(), relativeTo, ctx, new RuntimeException());
-                                        }
-
-                                        KotlinTypeMapping typeMapping = new KotlinTypeMapping(typeCache, firSession, kotlinSource.getFirFile());
-                                        PsiElementAssociations associations = new PsiElementAssociations(typeMapping, kotlinSource.getFirFile());
-                                        associations.initialize();
-                                        KotlinTreeParserVisitor psiParser = new KotlinTreeParserVisitor(kotlinSource, associations, styles, relativeTo, ctx);
-                                        SourceFile cu = psiParser.parse();
-
-                                        parsingListener.parsed(kotlinSource.getInput(), cu);
-                                        return requirePrintEqualsInput(cu, kotlinSource.getInput(), relativeTo, ctx);
-                                    } catch (Throwable t) {
-                                        ctx.getOnError().accept(t);
-                                        return ParseError.build(this, kotlinSource.getInput(), relativeTo, ctx, t);
-                                    }
-                                }),
+                        converted,
                         Stream.generate(() -> {
-                                    // The disposable should be disposed of exactly once after all sources have been parsed
-                                    Disposer.dispose(disposable);
+                                    // The environment should be released exactly once after all sources have been parsed
+                                    releaseEnvironment(compilerEnvironment, poolKey);
+                                    recordStatistics(symbolCache);
                                     return (SourceFile) null;
                                 })
                                 .limit(1))
-                .filter(Objects::nonNull)
-                .filter(source -> !source.getSourcePath().getFileName().toString().startsWith("dependsOn-"));
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Parses the sources like {@link #parseInputs(Iterable, Path, ExecutionContext)}, and additionally records which
+     * sources each source depends on, so that {@link #reparse(KotlinParseResult, Iterable, Collection, Path, ExecutionContext)}
+     * can reuse the LSTs of the sources that are not affected by a change.
+     */
+    public KotlinParseResult parseIncrementally(Iterable<Input> sources, @Nullable Path relativeTo, ExecutionContext ctx) {
+        return parseIncrementally(acceptedInputs(sources).collect(toList()), null, emptySet(), relativeTo, ctx);
+    }
+
+    /**
+     * Parses the sources of a previous result again after some of them changed. All sources are resolved again,
+     * since FIR cannot be reused across compiler sessions, but only the changed sources and the sources that
+     * transitively depend on them are converted to new LSTs. The LSTs of all other sources are reused.
+     *
+     * @param previous The result of the previous parse.
+     * @param changed  The sources that were added or modified since the previous parse.
+     * @param removed  The paths of the sources that were deleted since the previous parse.
+     */
+    public KotlinParseResult reparse(KotlinParseResult previous, Iterable<Input> changed, Collection<Path> removed,
+                                     @Nullable Path relativeTo, ExecutionContext ctx) {
+        Map<Path, Input> inputs = new LinkedHashMap<>();
+        for (Input input : previous.getInputs()) {
+            inputs.put(input.getPath(), input);
+        }
+        Set<Path> changedPaths = new HashSet<>();
+        acceptedInputs(changed).forEach(input -> {
+            inputs.put(input.getPath(), input);
+            changedPaths.add(input.getPath());
+        });
+        for (Path path : removed) {
+            inputs.remove(path);
+            changedPaths.add(path);
+        }
+        return parseIncrementally(new ArrayList<>(inputs.values()), previous, changedPaths, relativeTo, ctx);
+    }
+
+    /**
+     * Incremental parses resolve all sources in one compilation regardless of the {@link #heapBudget}, since the lookups
+     * that decide which sources are converted again are only complete when all sources are resolved together.
+     * The sources that are converted are converted on the {@link #conversionExecutor}, if there is one.
+     */
+    private KotlinParseResult parseIncrementally(List<Input> inputs, @Nullable KotlinParseResult previous, Set<Path> changed,
+                                                 @Nullable Path relativeTo, ExecutionContext ctx) {
+        ParsingEventListener parsingListener = ParsingExecutionContextView.view(ctx).getParsingListener();
+        Map<Path, KotlinParseResult.Entry> entries = new LinkedHashMap<>();
+
+        KotlinLookupRecorder lookupRecorder = new KotlinLookupRecorder();
+        KotlinParserSessionPool.Key poolKey = sessionPoolKey();
+        KotlinCompilerEnvironment environment = acquireEnvironment(poolKey);
+        CompiledSource compilerCus;
+        try {
+            compilerCus = parse(ListUtils.concatAll(dependsOn, inputs), environment, lookupRecorder, emptyMap(), ctx);
+        } catch (Exception e) {
+            discardEnvironment(environment);
+            for (Input input : inputs) {
+                entries.put(input.getPath(), new KotlinParseResult.Entry(input, ParseError.build(this, input, relativeTo, ctx, e),
+                        emptySet(), emptySet(), emptySet()));
+            }
+            return new KotlinParseResult(entries, entries.keySet());
+        }
+
+        try {
+            Set<Input> dependencies = Collections.newSetFromMap(new IdentityHashMap<>());
+            if (dependsOn != null) {
+                dependencies.addAll(dependsOn);
+            }
+            Map<Path, KotlinSource> kotlinSources = new LinkedHashMap<>();
+            for (KotlinSource kotlinSource : compilerCus.getSources()) {
+                if (!dependencies.contains(kotlinSource.getInput())) {
+                    Path path = kotlinSource.getInput().getPath();
+                    kotlinSources.put(path, kotlinSource);
+                    // Reserve the position of the source, the LST is filled in below
+                    entries.put(path, declarations(kotlinSource, null, lookupRecorder));
+                }
+            }
+
+            ClassIdSymbolCache symbolCache = symbolCache(compilerCus);
+            Set<Path> converted = previous == null ?
+                    kotlinSources.keySet() :
+                    KotlinParseResult.affectedBy(changed, entries, previous);
+            List<KotlinSource> toConvert = new ArrayList<>(converted.size());
+            Set<String> invalidated = new HashSet<>();
+            for (KotlinSource kotlinSource : kotlinSources.values()) {
+                Path path = kotlinSource.getInput().getPath();
+                KotlinParseResult.Entry before = previous == null ? null : previous.getEntry(path);
+                if (before == null || converted.contains(path)) {
+                    toConvert.add(kotlinSource);
+                    invalidated.addAll(entries.get(path).getDeclaredScopes());
+                    invalidated.add(fileClassName(kotlinSource.getKtFile()));
+                    if (before != null) {
+                        invalidated.addAll(before.getDeclaredScopes());
+                    }
+                }
+            }
+
+            // The types of the classes declared by the sources that are converted again were built from their previous
+            // declarations, so they must be built again rather than served from the type cache
+            JavaTypeCache conversionTypeCache = previous == null ? typeCache : new InvalidatingJavaTypeCache(typeCache, invalidated);
+            Map<Path, SourceFile> sourceFiles = new HashMap<>();
+            Stream<SourceFile> convertedSourceFiles = conversionExecutor == null ?
+                    toConvert.stream().map(kotlinSource -> convert(kotlinSource, conversionTypeCache, symbolCache, relativeTo, ctx, parsingListener)) :
+                    convertConcurrently(toConvert, conversionTypeCache, symbolCache, true, relativeTo, ctx, parsingListener);
+            Iterator<Path> paths = toConvert.stream().map(kotlinSource -> kotlinSource.getInput().getPath()).collect(toList()).iterator();
+            convertedSourceFiles.forEachOrdered(sourceFile -> sourceFiles.put(paths.next(), sourceFile));
+            if (conversionTypeCache instanceof InvalidatingJavaTypeCache) {
+                ((InvalidatingJavaTypeCache) conversionTypeCache).publish();
+            }
+            recordStatistics(symbolCache);
+
+            for (KotlinSource kotlinSource : kotlinSources.values()) {
+                Path path = kotlinSource.getInput().getPath();
+                SourceFile sourceFile = sourceFiles.get(path);
+                if (sourceFile == null) {
+                    sourceFile = Objects.requireNonNull(Objects.requireNonNull(previous).getEntry(path)).getSourceFile();
+                }
+                entries.put(path, declarations(kotlinSource, sourceFile, lookupRecorder));
+            }
+            return new KotlinParseResult(entries, new HashSet<>(converted));
+        } finally {
+            releaseEnvironment(environment, poolKey);
+        }
+    }
+
+    /**
+     * The name of the class that holds the top-level declarations of a file, as in {@link KotlinTypeSignatureBuilder#fileSignature}.
+     */
+    private static String fileClassName(KtFile ktFile) {
+        String packageName = ktFile.getPackageFqName().asString();
+        return (packageName.isEmpty() ? "" : packageName + ".") + ktFile.getName().replace(".kt", "Kt");
+    }
+
+    private static KotlinParseResult.Entry declarations(KotlinSource kotlinSource, @Nullable SourceFile sourceFile,
+                                                        KotlinLookupRecorder lookupRecorder) {
+        KtFile ktFile = kotlinSource.getKtFile();
+        String packageName = ktFile.getPackageFqName().asString();
+        Set<String> declaredNames = new HashSet<>();
+        Set<String> declaredScopes = new HashSet<>();
+        for (KtDeclaration declaration : ktFile.getDeclarations()) {
+            if (declaration instanceof KtNamedDeclaration && ((KtNamedDeclaration) declaration).getName() != null) {
+                declaredNames.add(packageName + '#' + ((KtNamedDeclaration) declaration).getName());
+            }
+            addClassScopes(declaration, declaredScopes);
+        }
+        return new KotlinParseResult.Entry(kotlinSource.getInput(), sourceFile, declaredNames, declaredScopes,
+                lookupRecorder.getLookups(ktFile.getViewProvider().getVirtualFile().getPath()));
+    }
+
+    private static void addClassScopes(KtDeclaration declaration, Set<String> declaredScopes) {
+        if (declaration instanceof KtClassOrObject) {
+            KtClassOrObject classOrObject = (KtClassOrObject) declaration;
+            if (classOrObject.getFqName() != null) {
+                declaredScopes.add(classOrObject.getFqName().asString());
+            }
+            for (KtDeclaration member : classOrObject.getDeclarations()) {
+                addClassScopes(member, declaredScopes);
+            }
+        }
+    }
+
+    /**
+     * @return A symbol cache shared by the conversions of all sources of the compilation, or null without type attribution.
+     */
+    private static @Nullable ClassIdSymbolCache symbolCache(CompiledSource compiledSource) {
+        FirSession firSession = compiledSource.getFirSession();
+        return firSession == null ? null : new ClassIdSymbolCache(firSession);
+    }
+
+    private void recordStatistics(@Nullable ClassIdSymbolCache symbolCache) {
+        if (symbolCache != null) {
+            symbolCacheHits.add(symbolCache.getHitCount());
+            symbolCacheMisses.add(symbolCache.getMissCount());
+        }
+    }
+
+    private SourceFile convert(KotlinSource kotlinSource, JavaTypeCache typeCache, @Nullable ClassIdSymbolCache symbolCache, @Nullable Path relativeTo,
+                               ExecutionContext ctx, ParsingEventListener parsingListener) {
+        try {
+            AnalyzerWithCompilerReport.SyntaxErrorReport report =
+                    AnalyzerWithCompilerReport.Companion.reportSyntaxErrors(kotlinSource.getKtFile(), new PrintingMessageCollector(System.err, PLAIN_FULL_PATHS, true));
+            if (report.isHasErrors()) {
+                return ParseError.build(this, kotlinSource.getInput(), relativeTo, ctx, new RuntimeException());
+            }
+
+            PsiElementAssociations associations = null;
+            if (symbolCache != null) {
+                assert kotlinSource.getFirFile() != null;
+                KotlinTypeMapping typeMapping = new KotlinTypeMapping(typeCache, symbolCache.getFirSession(),
+                        kotlinSource.getFirFile(), libraryTypeDepth, symbolCache, shallowClasses);
+                associations = new PsiElementAssociations(typeMapping, kotlinSource.getFirFile());
+                associations.initialize();
+            }
+            KotlinTreeParserVisitor psiParser = new KotlinTreeParserVisitor(kotlinSource, associations, styles, relativeTo, ctx);
+            SourceFile cu = psiParser.parse();
+            if (associations != null) {
+                memoHits.add(associations.getTypeMapping().getMemoHits());
+                memoMisses.add(associations.getTypeMapping().getMemoMisses());
+            }
+
+            parsingListener.parsed(kotlinSource.getInput(), cu);
+            return requirePrintEqualsInput(cu, kotlinSource, relativeTo, ctx);
+        } catch (Throwable t) {
+            ctx.getOnError().accept(t);
+            return ParseError.build(this, kotlinSource.getInput(), relativeTo, ctx, t);
+        }
+    }
+
+    /**
+     * Like {@link #requirePrintEqualsInput(SourceFile, Input, Path, ExecutionContext)}, but compares the printed
+     * LST to the source text that was read during parsing instead of reading the input again.
+     */
+    private SourceFile requirePrintEqualsInput(SourceFile sourceFile, KotlinSource kotlinSource, @Nullable Path relativeTo, ExecutionContext ctx) {
+        if (ctx.getMessage(ExecutionContext.REQUIRE_PRINT_EQUALS_INPUT, true) &&
+            !sourceFile.printAll().equals(kotlinSource.getSourceText())) {
+            return ParseError.build(this, kotlinSource.getInput(), relativeTo, ctx,
+                    new IllegalStateException(sourceFile.getSourcePath() + " is not print idempotent.")).withErroneous(sourceFile);
+        }
+        return sourceFile;
+    }
+
+    /**
+     * Converts the sources on the {@link #conversionExecutor}. At most {@link #conversionWindow()} sources are submitted
+     * but not yet emitted at any time, and further sources are submitted as the results are consumed. The results
+     * are streamed either in input order or in the order in which the conversions complete.
+     */
+    private Stream<SourceFile> convertConcurrently(List<KotlinSource> sources, JavaTypeCache typeCache, @Nullable ClassIdSymbolCache symbolCache,
+                                                   boolean orderedResults, @Nullable Path relativeTo,
+                                                   ExecutionContext ctx, ParsingEventListener parsingListener) {
+        assert conversionExecutor != null;
+        int window = conversionWindow();
+        int[] submitted = {0};
+        if (orderedResults) {
+            Deque<Future<SourceFile>> inFlight = new ArrayDeque<>(window);
+            return IntStream.range(0, sources.size()).mapToObj(i -> {
+                while (submitted[0] < sources.size() && inFlight.size() < window) {
+                    // Only the submitted task refers to the source, which is released once it is converted
+                    KotlinSource kotlinSource = sources.set(submitted[0]++, null);
+                    inFlight.add(conversionExecutor.submit(() -> convert(kotlinSource, typeCache, symbolCache, relativeTo, ctx, parsingListener)));
+                }
+                return await(inFlight.remove());
+            });
+        }
+        CompletionService<SourceFile> completionService = new ExecutorCompletionService<>(conversionExecutor);
+        return IntStream.range(0, sources.size()).mapToObj(emitted -> {
+            while (submitted[0] < sources.size() && submitted[0] - emitted < window) {
+                KotlinSource kotlinSource = sources.set(submitted[0]++, null);
+                completionService.submit(() -> convert(kotlinSource, typeCache, symbolCache, relativeTo, ctx, parsingListener));
+            }
+            try {
+                return await(completionService.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * @return The number of conversions that may be in flight: twice the number of threads converting concurrently,
+     * so that every thread has a source to convert while the consumer handles the results ahead of it.
+     */
+    private int conversionWindow() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int parallelism = processors;
+        if (conversionExecutor instanceof ForkJoinPool) {
+            parallelism = ((ForkJoinPool) conversionExecutor).getParallelism();
+        } else if (conversionExecutor instanceof ThreadPoolExecutor) {
+            parallelism = ((ThreadPoolExecutor) conversionExecutor).getMaximumPoolSize();
+        }
+        return 2 * Math.max(1, Math.min(parallelism, processors));
+    }
+
+    private static SourceFile await(Future<SourceFile> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
     }
 
     @Override
@@ -219,9 +607,45 @@ public class KotlinParser implements Parser {
     @Override
     public KotlinParser reset() {
         typeCache.clear();
+        shallowClasses.clear();
+        memoHits.reset();
+        memoMisses.reset();
+        symbolCacheHits.reset();
+        symbolCacheMisses.reset();
         return this;
     }
 
+    /**
+     * @return The counts of the type mapping lookups of all sources converted since this parser was built or last reset.
+     */
+    public TypeMappingStatistics getTypeMappingStatistics() {
+        return new TypeMappingStatistics(memoHits.sum(), memoMisses.sum(), symbolCacheHits.sum(), symbolCacheMisses.sum());
+    }
+
+    @Value
+    public static class TypeMappingStatistics {
+        /**
+         * Lookups of a FIR element that was already mapped in the same file, which are answered without building
+         * its signature.
+         */
+        long memoHits;
+
+        /**
+         * Lookups that built a signature, to find the type in the type cache or to build it.
+         */
+        long memoMisses;
+
+        /**
+         * Lookups of the FIR symbol of a class id that was already looked up in the same compilation.
+         */
+        long symbolCacheHits;
+
+        /**
+         * Lookups of the FIR symbol of a class id that reached the symbol providers of the session.
+         */
+        long symbolCacheMisses;
+    }
+
     @Deprecated//(since = "0.4.0", forRemoval = true)
     public void setSourceSet(String sourceSet) {
         this.sourceSetProvenance = null;
@@ -266,6 +690,23 @@ public class KotlinParser implements Parser {
         private KotlinLanguageLevel languageLevel = KotlinLanguageLevel.KOTLIN_1_9;
         private boolean isKotlinScript = false;
 
+        @Nullable
+        private KotlinParserSessionPool sessionPool;
+
+        @Nullable
+        private ExecutorService conversionExecutor;
+
+        private boolean orderedResults = true;
+        private boolean syntaxOnly;
+        private long heapBudget;
+        private int libraryTypeDepth = -1;
+
+        @Nullable
+        private KotlinLibraryCache libraryCache;
+
+        @Nullable
+        private Path typeCacheSnapshot;
+
         public Builder() {
             super(K.CompilationUnit.class);
         }
@@ -339,6 +780,99 @@ public class KotlinParser implements Parser {
             return this;
         }
 
+        /**
+         * Reuse warm compiler environments from the given pool instead of creating and disposing
+         * a new environment for every call to {@link KotlinParser#parseInputs(Iterable, Path, ExecutionContext)}.
+         * The pool, not the parser, owns the environments and must be closed by the caller.
+         */
+        public Builder sessionPool(@Nullable KotlinParserSessionPool sessionPool) {
+            this.sessionPool = sessionPool;
+            return this;
+        }
+
+        /**
+         * Convert the resolved sources to LSTs concurrently on the given executor, with up to twice as many sources in flight
+         * as the executor has threads. The LSTs are the same as those of a sequential parse. Types that are already in the
+         * type cache are looked up concurrently with a {@link ConcurrentJavaTypeCache}, but signatures are computed one at a
+         * time per compilation, since the compiler deserializes library symbols lazily and not thread-safely, and new types are
+         * built one at a time per type cache, so that each is built once. Parsing event listeners and error handlers are called
+         * from the executor's threads.
+         */
+        public Builder conversionExecutor(@Nullable ExecutorService conversionExecutor) {
+            this.conversionExecutor = conversionExecutor;
+            return this;
+        }
+
+        /**
+         * When converting concurrently, whether the parsed sources are returned in input order (the default)
+         * or as soon as each one is converted.
+         */
+        public Builder orderedResults(boolean orderedResults) {
+            this.orderedResults = orderedResults;
+            return this;
+        }
+
+        /**
+         * Build LSTs from the syntax tree alone, without resolving the sources against the classpath.
+         * The LSTs have no type attribution, which is sufficient for formatting and other text-level recipes
+         * and avoids the cost of classpath setup and FIR resolution.
+         */
+        public Builder syntaxOnly(boolean syntaxOnly) {
+            this.syntaxOnly = syntaxOnly;
+            return this;
+        }
+
+        /**
+         * Split inputs whose estimated PSI and FIR would exceed the given number of bytes into chunks that are
+         * resolved in separate compiler sessions, one after the other. Sources of the same package are kept together
+         * where possible, and each chunk is resolved with the rest of its packages and the packages it imports from
+         * as context, within the budget. Declarations that do not fit into a chunk's context do not resolve, so
+         * the budget trades type attribution across chunks for bounded memory. A budget of zero, the default,
+         * resolves all inputs together.
+         * <p>
+         * The size of a chunk is estimated from the size of its sources, with
+         * {@link KotlinChunkPlanner#ESTIMATED_HEAP_BYTES_PER_SOURCE_BYTE} bytes of PSI and FIR per byte of source.
+         * Every input is read once to plan the chunks, and its text is kept until the returned stream has been consumed.
+         * With {@link #orderedResults(boolean) ordered results}, the LSTs are returned in input order, which holds back
+         * the LSTs of a chunk until the LSTs of all inputs before them have been returned.
+         */
+        public Builder heapBudget(long heapBudget) {
+            this.heapBudget = heapBudget;
+            return this;
+        }
+
+        /**
+         * Map the members of library classes only this many library classes deep. Classes beyond the depth have
+         * their name and kind, but no supertypes, members or methods, until a lookup from within the depth reaches
+         * them, such as a source calling one of their methods. This bounds the type graph by the code being parsed
+         * rather than by the classpath. A negative depth, the default, maps all library members.
+         * <p>
+         * With a bounded depth, the parser reads library types from the configured type cache, but keeps the types it
+         * builds to itself, so that parsers sharing the cache never receive classes without members.
+         */
+        public Builder libraryTypeDepth(int libraryTypeDepth) {
+            this.libraryTypeDepth = libraryTypeDepth;
+            return this;
+        }
+
+        /**
+         * Resolve library symbols from the archives of a {@link KotlinLibraryCache} instead of from the classpath jars,
+         * writing the archive of each jar on first use.
+         */
+        public Builder libraryCache(@Nullable KotlinLibraryCache libraryCache) {
+            this.libraryCache = libraryCache;
+            return this;
+        }
+
+        /**
+         * Start with the library types of a snapshot written by {@link KotlinTypeCacheSnapshot#write}. The snapshot
+         * is loaded into the type cache on the next {@link #build()}, and skipped if it was written for another classpath.
+         */
+        public Builder typeCacheSnapshot(Path typeCacheSnapshot) {
+            this.typeCacheSnapshot = typeCacheSnapshot;
+            return this;
+        }
+
         private @Nullable Collection<Path> resolvedClasspath() {
             if (artifactNames != null && !artifactNames.isEmpty()) {
                 classpath = JavaParser.dependenciesFromClasspath(artifactNames.toArray(new String[0]));
@@ -349,7 +883,13 @@ public class KotlinParser implements Parser {
 
         @Override
         public KotlinParser build() {
-            return new KotlinParser(resolvedClasspath(), dependsOn, styles, logCompilationWarningsAndErrors, typeCache, moduleName, languageLevel, isKotlinScript);
+            if (typeCacheSnapshot != null) {
+                KotlinTypeCacheSnapshot.load(typeCacheSnapshot, resolvedClasspath(), typeCache);
+                typeCacheSnapshot = null;
+            }
+            // Classes beyond the library type depth must not reach parsers that share the cache but map all library members
+            JavaTypeCache parserTypeCache = libraryTypeDepth >= 0 ? new ReadThroughJavaTypeCache(typeCache) : typeCache;
+            return new KotlinParser(resolvedClasspath(), dependsOn, styles, logCompilationWarningsAndErrors, parserTypeCache, moduleName, languageLevel, isKotlinScript, sessionPool, conversionExecutor, orderedResults, syntaxOnly, heapBudget, libraryTypeDepth, libraryCache);
         }
 
         @Override
@@ -360,30 +900,85 @@ public class KotlinParser implements Parser {
         @Override
         public KotlinParser.Builder clone() {
             KotlinParser.Builder clone = (KotlinParser.Builder) super.clone();
-            clone.typeCache = this.typeCache.clone();
+            // A concurrent type cache is meant to be shared between parsers
+            if (!(this.typeCache instanceof ConcurrentJavaTypeCache)) {
+                clone.typeCache = this.typeCache.clone();
+            }
             return clone;
         }
     }
 
     public CompiledSource parse(List<Parser.Input> sources, Disposable disposable, ExecutionContext ctx) {
+        return parse(sources, createCompilerEnvironment(disposable), null, emptyMap(), ctx);
+    }
+
+    /**
+     * @return The key under which the environment of a parse is checked out of the {@link #sessionPool}, or null
+     * without a pool. The key is computed once per parse and handed back on release, so that an environment
+     * is returned under the classpath fingerprint it was created for, even if a jar changed during the parse.
+     */
+    private KotlinParserSessionPool.@Nullable Key sessionPoolKey() {
+        if (sessionPool == null) {
+            return null;
+        }
+        List<Path> paths = classpath == null || syntaxOnly ? emptyList() : new ArrayList<>(classpath);
+        return new KotlinParserSessionPool.Key(
+                paths,
+                ClasspathFingerprint.of(paths),
+                languageLevel,
+                moduleName,
+                logCompilationWarningsAndErrors,
+                libraryCache == null ? null : libraryCache.getDirectory()
+        );
+    }
+
+    private KotlinCompilerEnvironment acquireEnvironment(KotlinParserSessionPool.@Nullable Key poolKey) {
+        if (sessionPool == null || poolKey == null) {
+            return createCompilerEnvironment(Disposer.newDisposable());
+        }
+        return sessionPool.acquire(poolKey, () -> createCompilerEnvironment(Disposer.newDisposable()));
+    }
+
+    private void releaseEnvironment(KotlinCompilerEnvironment environment, KotlinParserSessionPool.@Nullable Key poolKey) {
+        if (sessionPool == null || poolKey == null) {
+            environment.close();
+        } else {
+            sessionPool.release(poolKey, environment);
+        }
+    }
+
+    private void discardEnvironment(KotlinCompilerEnvironment environment) {
+        if (sessionPool == null) {
+            environment.close();
+        } else {
+            sessionPool.evict(environment);
+        }
+    }
+
+    private KotlinCompilerEnvironment createCompilerEnvironment(Disposable disposable) {
         CompilerConfiguration compilerConfiguration = compilerConfiguration();
-        if (classpath != null) {
+        if (classpath != null && !syntaxOnly) {
             for (Path path : classpath) {
                 File file;
                 try {
-                    file = path.toFile();
+                    file = (libraryCache == null ? path : libraryCache.resolve(path)).toFile();
                 } catch (UnsupportedOperationException ex) {
                     continue;
                 }
                 addJvmClasspathRoot(compilerConfiguration, file);
             }
         }
-        addJvmClasspathRoot(compilerConfiguration, PathUtil.getResourcePathForClass(AnnotationTarget.class));
+        File stdlib = PathUtil.getResourcePathForClass(AnnotationTarget.class);
+        addJvmClasspathRoot(compilerConfiguration, libraryCache == null ? stdlib : libraryCache.resolve(stdlib.toPath()).toFile());
 
         K2JVMCompilerArguments arguments = new K2JVMCompilerArguments();
         configureJdkHome(compilerConfiguration, arguments);
         configureJavaModulesContentRoots(compilerConfiguration, arguments);
         configureAdvancedJvmOptions(compilerConfiguration, arguments);
+        if (libraryCache != null) {
+            // Symbol archives are uncompressed, so class headers and metadata can be read from a memory mapping
+            compilerConfiguration.put(JVMConfigurationKeys.USE_FAST_JAR_FILE_SYSTEM, true);
+        }
         configureKlibPaths(compilerConfiguration, arguments);
         configureContentRootsFromClassPath(compilerConfiguration, arguments);
         configureJdkClasspathRoots(compilerConfiguration);
@@ -396,6 +991,23 @@ public class KotlinParser implements Parser {
                 compilerConfiguration,
                 EnvironmentConfigFiles.JVM_CONFIG_FILES);
 
+        Function1<? super GlobalSearchScope, PackagePartProvider> providerFunction1 = environment::createPackagePartProvider;
+        VfsBasedProjectEnvironment projectEnvironment = new VfsBasedProjectEnvironment(
+                environment.getProject(),
+                VirtualFileManager.getInstance().getFileSystem(StandardFileSystems.FILE_PROTOCOL),
+                providerFunction1);
+
+        return new KotlinCompilerEnvironment(disposable, compilerConfiguration, environment, module, projectEnvironment);
+    }
+
+    private CompiledSource parse(List<Parser.Input> sources, KotlinCompilerEnvironment compilerEnvironment,
+                                 @Nullable LookupTracker lookupTracker, Map<Parser.Input, KotlinChunkPlanner.SourceText> texts,
+                                 ExecutionContext ctx) {
+        CompilerConfiguration compilerConfiguration = compilerEnvironment.getCompilerConfiguration();
+        KotlinCoreEnvironment environment = compilerEnvironment.getCoreEnvironment();
+        Module module = compilerEnvironment.getModule();
+        VfsBasedProjectEnvironment projectEnvironment = compilerEnvironment.getProjectEnvironment();
+
         List<KtFile> ktFiles = new ArrayList<>(sources.size());
 
         List<KotlinSource> kotlinSources = new ArrayList<>(sources.size());
@@ -411,8 +1023,13 @@ public class KotlinParser implements Parser {
                 fileName = source.getPath().toString();
             }
 
-            String sourceText = source.getSource(ctx).readFully();
-            List<Integer> cRLFLocations = getCRLFLocations(sourceText);
+            // Each input is read exactly once, and the detected encoding is kept for the LST
+            KotlinChunkPlanner.SourceText read = texts.get(source);
+            if (read == null) {
+                read = KotlinChunkPlanner.SourceText.read(source, ctx);
+            }
+            String sourceText = read.getText();
+            int[] cRLFLocations = getCRLFLocations(sourceText);
 
             VirtualFile vFile = new LightVirtualFile(fileName, KotlinFileType.INSTANCE, StringUtilRt.convertLineSeparators(sourceText));
             final FileViewProvider fileViewProvider = new SingleRootFileViewProvider(
@@ -422,14 +1039,12 @@ public class KotlinParser implements Parser {
             KtFile file = (KtFile) fileViewProvider.getPsi(KotlinLanguage.INSTANCE);
             assert file != null;
             ktFiles.add(file);
-            kotlinSources.add(new KotlinSource(source, file, cRLFLocations));
+            kotlinSources.add(new KotlinSource(source, file, cRLFLocations, sourceText, read.getCharset(), read.isCharsetBomMarked()));
         }
 
-        Function1<? super GlobalSearchScope, PackagePartProvider> providerFunction1 = environment::createPackagePartProvider;
-        VfsBasedProjectEnvironment projectEnvironment = new VfsBasedProjectEnvironment(
-                environment.getProject(),
-                VirtualFileManager.getInstance().getFileSystem(StandardFileSystems.FILE_PROTOCOL),
-                providerFunction1);
+        if (syntaxOnly) {
+            return new CompiledSource(null, kotlinSources);
+        }
 
         AbstractProjectFileSearchScope sourceScope = projectEnvironment.getSearchScopeByPsiFiles(ktFiles, false);
         sourceScope.plus(projectEnvironment.getSearchScopeForProjectJavaSources());
@@ -467,7 +1082,7 @@ public class KotlinParser implements Parser {
                 languageVersionSettings,
                 sourceScope,
                 libraryScope,
-                compilerConfiguration.get(LOOKUP_TRACKER),
+                lookupTracker == null ? compilerConfiguration.get(LOOKUP_TRACKER) : lookupTracker,
                 compilerConfiguration.get(ENUM_WHEN_TRACKER),
                 compilerConfiguration.get(IMPORT_TRACKER),
                 null, // Do not incrementally compile
@@ -603,25 +1218,31 @@ public class KotlinParser implements Parser {
         }
     }
 
-    private List<Integer> getCRLFLocations(String source) {
-        if (source.isEmpty()) {
-            return emptyList();
-        }
-        List<Integer> cRLFIndices = new ArrayList<>();
+    private static final int[] NO_CRLF_LOCATIONS = new int[0];
+
+    /**
+     * @return The offsets in the normalized source text of the line breaks that are CRLF in the source, in ascending order.
+     */
+    private int[] getCRLFLocations(String source) {
+        int[] cRLFIndices = NO_CRLF_LOCATIONS;
+        int count = 0;
         int pos = 0;
         for (int i = 0; i < source.length(); i++) {
             char currentChar = source.charAt(i);
             if (currentChar == '\r') {
                 // Check if the next character is '\n' (CRLF)
                 if (i + 1 < source.length() && source.charAt(i + 1) == '\n') {
-                    cRLFIndices.add(pos);
+                    if (count == cRLFIndices.length) {
+                        cRLFIndices = Arrays.copyOf(cRLFIndices, Math.max(16, count * 2));
+                    }
+                    cRLFIndices[count++] = pos;
                     i++; // Skip the next character ('\n')
                 }
             }
             pos++;
         }
 
-        return cRLFIndices;
+        return count == cRLFIndices.length ? cRLFIndices : Arrays.copyOf(cRLFIndices, count);
     }
 
     static class SourcePathFromSourceTextResolver {
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.kotlin;
+
+import lombok.Value;
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.kotlin.internal.ClasspathFingerprint;
+import org.openrewrite.kotlin.internal.KotlinCompilerEnvironment;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * A pool of warm compiler environments shared by {@link KotlinParser} instances.
+ * <p>
+ * Creating the {@link org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment} and configuring the classpath and JDK roots
+ * dominates the cost of parsing small batches. Parsers built with {@link KotlinParser.Builder#sessionPool(KotlinParserSessionPool)}
+ * check out an environment for the classpath, language level and module name they were configured with, and return it to the pool
+ * once the stream of parsed sources has been fully consumed, so only the sources of each batch are swapped in.
+ * <p>
+ * An environment is used by one parse at a time; concurrent parses with the same configuration each receive their own environment.
+ * Environments stay alive until {@link #close()} is called.
+ */
+public class KotlinParserSessionPool implements AutoCloseable {
+    private final Map<Key, Deque<KotlinCompilerEnvironment>> idle = new HashMap<>();
+    private final Set<KotlinCompilerEnvironment> all = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean closed;
+
+    synchronized KotlinCompilerEnvironment acquire(Key key, Supplier<KotlinCompilerEnvironment> create) {
+        if (closed) {
+            throw new IllegalStateException("The Kotlin parser session pool has been closed");
+        }
+        Deque<KotlinCompilerEnvironment> environments = idle.get(key);
+        if (environments != null && !environments.isEmpty()) {
+            return environments.pop();
+        }
+        KotlinCompilerEnvironment environment = create.get();
+        all.add(environment);
+        return environment;
+    }
+
+    synchronized void release(Key key, KotlinCompilerEnvironment environment) {
+        if (closed || !all.contains(environment)) {
+            environment.close();
+            return;
+        }
+        idle.computeIfAbsent(key, k -> new ArrayDeque<>()).push(environment);
+    }
+
+    /**
+     * Removes an environment from the pool, i.e. after a failed parse has left it in an unknown state.
+     */
+    synchronized void evict(KotlinCompilerEnvironment environment) {
+        all.remove(environment);
+        environment.close();
+    }
+
+    /**
+     * @return The number of environments created by this pool that have not been closed.
+     */
+    public synchronized int size() {
+        return all.size();
+    }
+
+    /**
+     * @return The environments that are waiting to be checked out again, in no particular order.
+     */
+    synchronized List<KotlinCompilerEnvironment> idleEnvironments() {
+        List<KotlinCompilerEnvironment> environments = new ArrayList<>();
+        for (Deque<KotlinCompilerEnvironment> deque : idle.values()) {
+            environments.addAll(deque);
+        }
+        return environments;
+    }
+
+    /**
+     * Disposes every pooled environment. Environments that are checked out at the time of closing
+     * are disposed when their parse completes.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Deque<KotlinCompilerEnvironment> environments : idle.values()) {
+            for (KotlinCompilerEnvironment environment : environments) {
+                all.remove(environment);
+                environment.close();
+            }
+        }
+        idle.clear();
+        all.clear();
+    }
+
+    /**
+     * The configuration that determines whether a compiler environment can be reused.
+     */
+    @Value
+    static class Key {
+        List<Path> classpath;
+
+        /**
+         * Jars that are rebuilt in place, like snapshot dependencies, must not be served from a stale environment.
+         */
+        ClasspathFingerprint classpathFingerprint;
+
+        KotlinParser.KotlinLanguageLevel languageLevel;
+        String moduleName;
+        boolean logCompilationWarningsAndErrors;
+
+        /**
+         * The directory of the {@link KotlinLibraryCache}, since an environment resolves the classpath jars
+         * to the symbol archives of that directory.
+         */
+        @Nullable
+        Path libraryCache;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.kotlin;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kotlin.annotation.AnnotationTarget;
+import org.jetbrains.kotlin.utils.PathUtil;
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.Parser;
+import org.openrewrite.internal.ObjectMappers;
+import org.openrewrite.java.internal.JavaTypeCache;
+import org.openrewrite.java.tree.JavaType;
+import org.openrewrite.kotlin.internal.ClasspathFingerprint;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * A file holding the library types of a classpath, so that a new parser can start with a warm type cache
+ * instead of mapping the same library classes again.
+ * <p>
+ * A snapshot is a gzipped header followed by the types as JSON. The header holds the fingerprint of the classpath
+ * and the Kotlin standard library the types were mapped from, so a snapshot of another classpath is skipped
+ * without reading the types.
+ */
+public class KotlinTypeCacheSnapshot {
+    private static final String FORMAT = "rewrite-kotlin-type-cache-1";
+    private static final String WARM_UP_SOURCE = "TypeCacheSnapshotWarmUp";
+    private static final TypeReference<Map<String, JavaType>> TYPES = new TypeReference<Map<String, JavaType>>() {
+    };
+
+    private static final ObjectMapper MAPPER = ObjectMappers.propertyBasedMapper(KotlinTypeCacheSnapshot.class.getClassLoader());
+
+    private KotlinTypeCacheSnapshot() {
+    }
+
+    /**
+     * Maps the given library classes, with their supertypes and members, and writes the resulting types to a snapshot.
+     *
+     * @param snapshot   The file to write.
+     * @param classpath  The classpath the classes are loaded from, in addition to the Kotlin standard library and the JDK.
+     * @param classNames The fully qualified names of the classes to map, such as {@code kotlin.collections.List}.
+     * @return The number of types written.
+     */
+    public static int write(Path snapshot, @Nullable Collection<Path> classpath, Collection<String> classNames, ExecutionContext ctx) {
+        ConcurrentJavaTypeCache typeCache = new ConcurrentJavaTypeCache();
+        StringBuilder source = new StringBuilder();
+        for (String className : classNames) {
+            source.append("import ").append(className).append('\n');
+        }
+        KotlinParser.builder()
+                .classpath(classpath == null ? emptyList() : classpath)
+                .typeCache(typeCache)
+                .build()
+                .parseInputs(singletonList(Parser.Input.fromString(Paths.get(WARM_UP_SOURCE + ".kt"), source.toString())), null, ctx)
+                .collect(toList());
+
+        Map<String, JavaType> types = new TreeMap<>();
+        typeCache.forEach((signature, type) -> {
+            // Placeholders and the types of the warm up source itself do not belong to the library
+            if (type instanceof JavaType && !(type instanceof JavaType.Unknown) &&
+                !(type instanceof JavaType.ShallowClass) && !signature.startsWith(WARM_UP_SOURCE)) {
+                types.put(signature, (JavaType) type);
+            }
+        });
+
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(Files.newOutputStream(snapshot)))) {
+            out.writeUTF(FORMAT);
+            out.writeUTF(fingerprint(classpath));
+            MAPPER.writerFor(TYPES)
+                    .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                    .writeValue((OutputStream) out, types);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return types.size();
+    }
+
+    /**
+     * Adds the types of a snapshot to a type cache, if the snapshot was written for the same classpath.
+     *
+     * @return {@code true} if the types were loaded, {@code false} if the snapshot is missing, unreadable or was written
+     * for another classpath.
+     */
+    public static boolean load(Path snapshot, @Nullable Collection<Path> classpath, JavaTypeCache typeCache) {
+        if (!Files.isRegularFile(snapshot)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(Files.newInputStream(snapshot)))) {
+            if (!FORMAT.equals(in.readUTF()) || !fingerprint(classpath).equals(in.readUTF())) {
+                return false;
+            }
+            Map<String, JavaType> types = MAPPER.readerFor(TYPES)
+                    .without(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+                    .readValue((InputStream) in);
+            for (Map.Entry<String, JavaType> type : types.entrySet()) {
+                typeCache.put(type.getKey(), type.getValue());
+            }
+            return true;
+        } catch (IOException e) {
+            // A snapshot only saves work, so parsing goes on with a cold type cache
+            return false;
+        }
+    }
+
+    private static String fingerprint(@Nullable Collection<Path> classpath) {
+        List<Path> paths = classpath == null ? new ArrayList<>() : new ArrayList<>(classpath);
+        paths.add(PathUtil.getResourcePathForClass(AnnotationTarget.class).toPath());
+        return ClasspathFingerprint.of(paths).getHash() + ":" + System.getProperty("java.version");
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.kotlin;
+
+import lombok.Value;
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.SourceFile;
+import org.openrewrite.java.internal.DefaultJavaTypeSignatureBuilder;
+import org.openrewrite.java.tree.JavaType;
+
+import java.util.*;
+
+/**
+ * Finds and removes structurally equal {@link JavaType} instances that are referenced from the LSTs of one parse,
+ * for example types of parsers that did not share a type cache.
+ * <p>
+ * Types are equal when they are of the same kind and have the same signature, the same criterion the type caches
+ * use, and classes additionally when they and their supertypes have the same members. The signature of a class is only
+ * its name, so this keeps classes of the same name apart whose members differ, like the classes of parses with
+ * different classpaths or library type depths. Only the types referenced from the trees are replaced, so a duplicate that is also reachable
+ * from another type stays reachable.
+ */
+public class KotlinTypeDeduplication {
+    private KotlinTypeDeduplication() {
+    }
+
+    /**
+     * Counts the type references of the source files, the type instances they refer to and how many of those
+     * instances are distinct.
+     */
+    public static Report report(Iterable<? extends SourceFile> sourceFiles) {
+        TypeKeys keys = new TypeKeys();
+        Set<JavaType> instances = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<String> distinct = new HashSet<>();
+        long[] references = new long[1];
+        KotlinIsoVisitor<Integer> visitor = new KotlinIsoVisitor<Integer>() {
+            @Override
+            public @Nullable JavaType visitType(@Nullable JavaType javaType, Integer p) {
+                if (javaType != null) {
+                    references[0]++;
+                    if (instances.add(javaType)) {
+                        distinct.add(keys.key(javaType));
+                    }
+                }
+                return javaType;
+            }
+        };
+        for (SourceFile sourceFile : sourceFiles) {
+            if (visitor.isAcceptable(sourceFile, 0)) {
+                visitor.visit(sourceFile, 0);
+            }
+        }
+        return new Report(references[0], instances.size(), distinct.size());
+    }
+
+    /**
+     * Replaces the types referenced from the source files with one instance per distinct type, the first one found.
+     *
+     * @return The source files, in the same order.
+     */
+    public static List<SourceFile> deduplicate(List<SourceFile> sourceFiles) {
+        TypeKeys keys = new TypeKeys();
+        Map<JavaType, JavaType> canonicalByInstance = new IdentityHashMap<>();
+        Map<String, JavaType> canonicalByKey = new HashMap<>();
+        KotlinIsoVisitor<Integer> visitor = new KotlinIsoVisitor<Integer>() {
+            @Override
+            public @Nullable JavaType visitType(@Nullable JavaType javaType, Integer p) {
+                if (javaType == null) {
+                    return null;
+                }
+                return canonicalByInstance.computeIfAbsent(javaType,
+                        t -> canonicalByKey.computeIfAbsent(keys.key(t), k -> t));
+            }
+        };
+        List<SourceFile> deduplicated = new ArrayList<>(sourceFiles.size());
+        for (SourceFile sourceFile : sourceFiles) {
+            deduplicated.add(visitor.isAcceptable(sourceFile, 0) ? (SourceFile) visitor.visitNonNull(sourceFile, 0) : sourceFile);
+        }
+        return deduplicated;
+    }
+
+    private static class TypeKeys {
+        private final DefaultJavaTypeSignatureBuilder signatureBuilder = new DefaultJavaTypeSignatureBuilder();
+
+        /**
+         * The declaration keys of the classes seen so far, since the classes of a hierarchy are shared by many types.
+         */
+        private final Map<JavaType.FullyQualified, String> declarationKeys = new IdentityHashMap<>();
+
+        String key(JavaType type) {
+            String signature;
+            if (type instanceof JavaType.Method) {
+                signature = signatureBuilder.methodSignature((JavaType.Method) type);
+            } else if (type instanceof JavaType.Variable) {
+                signature = signatureBuilder.variableSignature((JavaType.Variable) type);
+            } else {
+                signature = signatureBuilder.signature(type);
+            }
+            // A shallow class has the signature of the class it stands in for, but must not replace it
+            String key = type.getClass().getName() + ':' + signature;
+            if (type instanceof JavaType.Parameterized) {
+                return key + declarationKey(((JavaType.Parameterized) type).getType());
+            }
+            return type instanceof JavaType.Class ? key + declarationKey((JavaType.Class) type) : key;
+        }
+
+        /**
+         * The members of a class and, recursively, of its supertypes, which its signature does not include. The types
+         * the members refer to are compared by signature.
+         */
+        private String declarationKey(JavaType.FullyQualified type) {
+            String key = declarationKeys.get(type);
+            if (key == null) {
+                StringJoiner joiner = new StringJoiner(",", "{", "}");
+                if (type.getSupertype() != null) {
+                    joiner.add(signatureBuilder.signature(type.getSupertype()) + declarationKey(type.getSupertype()));
+                }
+                for (JavaType.FullyQualified anInterface : type.getInterfaces()) {
+                    joiner.add(signatureBuilder.signature(anInterface) + declarationKey(anInterface));
+                }
+                for (JavaType.Variable member : type.getMembers()) {
+                    joiner.add(signatureBuilder.variableSignature(member));
+                }
+                for (JavaType.Method method : type.getMethods()) {
+                    joiner.add(signatureBuilder.methodSignature(method));
+                }
+                key = joiner.toString();
+                declarationKeys.put(type, key);
+            }
+            return key;
+        }
+    }
+
+    @Value
+    public static class Report {
+        /**
+         * The number of times the trees refer to a type.
+         */
+        long references;
+
+        /**
+         * The number of type instances referred to.
+         */
+        long instances;
+
+        /**
+         * The number of distinct types among the instances.
+         */
+        long distinct;
+
+        /**
+         * @return The number of instances that {@link #deduplicate(List)} makes unreachable from the trees.
+         */
+        public long getDuplicates() {
+            return instances - distinct;
+        }
+    }
+}
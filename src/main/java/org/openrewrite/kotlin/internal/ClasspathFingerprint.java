@@ -0,0 +1,155 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.kotlin.internal;
+
+import lombok.Value;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A content hash of a classpath, independent of where the jars are located on disk.
+ * <p>
+ * Two classpaths have the same fingerprint when they contain the same jars (by content) in the same order,
+ * so the fingerprint can key anything that is derived only from the library symbols, such as compiler
+ * environments or type cache snapshots. Jar hashes are memoized per path, size and modification time for the
+ * {@link #MAX_JAR_HASHES} most recently used jars, so recomputing the fingerprint of an unchanged classpath only costs
+ * a file stat per entry. Directories are hashed by path and by the number, total size and latest modification time of
+ * the files within them, since their contents are typically build outputs that change too often to be worth reading.
+ */
+@Value
+public class ClasspathFingerprint {
+    private static final int MAX_JAR_HASHES = 4096;
+
+    private static final Map<FileStamp, String> JAR_HASHES = Collections.synchronizedMap(
+            new LinkedHashMap<FileStamp, String>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<FileStamp, String> eldest) {
+                    return size() > MAX_JAR_HASHES;
+                }
+            });
+
+    String hash;
+
+    public static ClasspathFingerprint of(Collection<Path> classpath) {
+        MessageDigest digest = sha256();
+        for (Path path : classpath) {
+            digest.update(entryHash(path).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return new ClasspathFingerprint(toHex(digest.digest()));
+    }
+
+    private static String entryHash(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            FileStamp stamp = new FileStamp(path.toAbsolutePath().normalize(), attributes.size(),
+                    attributes.lastModifiedTime().toMillis());
+            if (attributes.isDirectory()) {
+                return directoryHash(stamp.getPath());
+            }
+            String hash = JAR_HASHES.get(stamp);
+            if (hash == null) {
+                // Hashed outside of the map's lock, so that other jars can be looked up meanwhile
+                hash = contentHash(stamp);
+                JAR_HASHES.put(stamp, hash);
+            }
+            return hash;
+        } catch (IOException | UncheckedIOException e) {
+            // A missing classpath entry contributes nothing to the compilation, but is still part of its identity
+            return "missing:" + path;
+        }
+    }
+
+    /**
+     * A change to any file within the directory, such as a recompiled nested class, changes its size or
+     * modification time. Adding or removing a file changes the count and the modification time of its parent.
+     */
+    private static String directoryHash(Path directory) throws IOException {
+        long[] countSizeAndLastModified = new long[3];
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                visit(attrs);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                countSizeAndLastModified[0]++;
+                countSizeAndLastModified[1] += attrs.size();
+                visit(attrs);
+                return FileVisitResult.CONTINUE;
+            }
+
+            private void visit(BasicFileAttributes attrs) {
+                countSizeAndLastModified[2] = Math.max(countSizeAndLastModified[2], attrs.lastModifiedTime().toMillis());
+            }
+        });
+        return "dir:" + directory + ":" + countSizeAndLastModified[0] + ":" + countSizeAndLastModified[1] + ":" +
+               countSizeAndLastModified[2];
+    }
+
+    private static String contentHash(FileStamp stamp) {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream is = Files.newInputStream(stamp.getPath())) {
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    @Value
+    private static class FileStamp {
+        Path path;
+        long size;
+        long lastModified;
+    }
+}
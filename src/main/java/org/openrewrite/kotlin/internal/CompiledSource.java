@@ -17,11 +17,16 @@ package org.openrewrite.kotlin.internal;
 
 import lombok.Value;
 import org.jetbrains.kotlin.fir.FirSession;
+import org.jspecify.annotations.Nullable;
 
 import java.util.Collection;
 
 @Value
 public class CompiledSource {
+    /**
+     * Null when the sources were parsed without type attribution.
+     */
+    @Nullable
     FirSession firSession;
     Collection<KotlinSource> sources;
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.kotlin.internal;
+
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.java.internal.JavaTypeCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A view of a type cache for sources that are converted again after they changed. Since a {@link JavaTypeCache}
+ * cannot remove entries, the cached types whose signatures mention a changed class are hidden instead, so that
+ * they are built again from the new declarations.
+ * <p>
+ * Like a {@link ReadThroughJavaTypeCache}, the types put into this cache are kept to itself while sources are
+ * converted, and are only {@link #publish() published} to the underlying cache once they are complete, since other
+ * parsers sharing the underlying cache do not synchronize on this one.
+ */
+public class InvalidatingJavaTypeCache extends JavaTypeCache {
+    private final JavaTypeCache cache;
+
+    /**
+     * Fully qualified class names, with nested classes separated by {@code .}.
+     */
+    private final Set<String> invalidated;
+
+    /**
+     * The signatures of the types put into the map inherited from {@link JavaTypeCache}, in the order they were put.
+     */
+    private final List<String> built = new ArrayList<>();
+
+    public InvalidatingJavaTypeCache(JavaTypeCache cache, Set<String> invalidated) {
+        this.cache = cache;
+        this.invalidated = invalidated;
+    }
+
+    @Override
+    public <T> @Nullable T get(String signature) {
+        T type = super.get(signature);
+        if (type != null) {
+            return type;
+        }
+        return isInvalidated(signature) ? null : cache.get(signature);
+    }
+
+    @Override
+    public void put(String signature, Object o) {
+        built.add(signature);
+        super.put(signature, o);
+    }
+
+    /**
+     * Replaces the types of the underlying cache with the types built since this cache was created.
+     */
+    public void publish() {
+        synchronized (cache) {
+            for (String signature : built) {
+                cache.put(signature, super.get(signature));
+            }
+        }
+        clear();
+    }
+
+    @Override
+    public void clear() {
+        built.clear();
+        super.clear();
+    }
+
+    /**
+     * Whether any class name in a signature is invalidated. Tokens that only look like class names, such as member
+     * names, at worst cause a type to be built again.
+     */
+    private boolean isInvalidated(String signature) {
+        int start = -1;
+        for (int i = 0; i <= signature.length(); i++) {
+            char c = i == signature.length() ? ' ' : signature.charAt(i);
+            if (Character.isJavaIdentifierPart(c) || c == '.') {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                if (invalidated.contains(signature.substring(start, i).replace('$', '.'))) {
+                    return true;
+                }
+                start = -1;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,467 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.kotlin.internal;
+
+import lombok.Value;
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.Parser;
+import org.openrewrite.internal.EncodingDetectingInputStream;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * Splits a set of inputs into chunks that can each be resolved in their own compiler session within a heap budget.
+ * <p>
+ * Sources of the same package are kept in the same chunk where possible, since they see each other's declarations
+ * without imports. Each chunk is resolved together with a bounded set of context sources: the rest of its packages
+ * and the packages it imports from, nearest first. Context sources take part in resolution only, so declarations
+ * from other chunks resolve as long as they fit in the budget.
+ */
+public class KotlinChunkPlanner {
+    /**
+     * A rough estimate of the retained PSI and FIR per byte of source text, on the high side for typical sources.
+     * Sources with many small expressions retain more per byte than sources dominated by comments or string literals.
+     * Since the cost of a source is linear in its size, a heap budget can be calibrated for a code base by scaling it
+     * with the ratio of the observed retained heap of a parse to this estimate.
+     */
+    public static final long ESTIMATED_HEAP_BYTES_PER_SOURCE_BYTE = 150;
+
+    private final long heapBudget;
+
+    public KotlinChunkPlanner(long heapBudget) {
+        this.heapBudget = heapBudget;
+    }
+
+    /**
+     * @return The chunks, with the inputs grouped by package, or a single chunk in input order with no context if all inputs fit in the budget.
+     * Each input is read once here, and its text is handed to the compiler through {@link Chunk#getTexts()}, so that the chunks
+     * never read an input again.
+     */
+    public List<Chunk> plan(List<Parser.Input> inputs, ExecutionContext ctx) {
+        Map<String, List<SourceInfo>> packages = new LinkedHashMap<>();
+        List<SourceInfo> all = new ArrayList<>(inputs.size());
+        long total = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            SourceInfo info = SourceInfo.read(inputs.get(i), i, ctx);
+            all.add(info);
+            total += info.getCost();
+            packages.computeIfAbsent(info.getPackageName(), k -> new ArrayList<>()).add(info);
+        }
+        if (total <= heapBudget) {
+            return Collections.singletonList(chunk(all, Collections.emptyList()));
+        }
+
+        // Half of the budget goes to the sources of a chunk, and the other half to their context
+        long chunkBudget = Math.max(1, heapBudget / 2);
+        List<List<SourceInfo>> chunks = new ArrayList<>();
+        List<SourceInfo> current = new ArrayList<>();
+        long currentCost = 0;
+        for (List<SourceInfo> pkg : packages.values()) {
+            long pkgCost = 0;
+            for (SourceInfo info : pkg) {
+                pkgCost += info.getCost();
+            }
+            if (!current.isEmpty() && currentCost + pkgCost > chunkBudget) {
+                chunks.add(current);
+                current = new ArrayList<>();
+                currentCost = 0;
+            }
+            for (SourceInfo info : pkg) {
+                // A package that does not fit on its own is split across chunks
+                if (!current.isEmpty() && currentCost + info.getCost() > chunkBudget) {
+                    chunks.add(current);
+                    current = new ArrayList<>();
+                    currentCost = 0;
+                }
+                current.add(info);
+                currentCost += info.getCost();
+            }
+        }
+        if (!current.isEmpty()) {
+            chunks.add(current);
+        }
+
+        List<Chunk> planned = new ArrayList<>(chunks.size());
+        for (List<SourceInfo> chunk : chunks) {
+            planned.add(chunk(chunk, context(chunk, packages, heapBudget - chunkBudget)));
+        }
+        return planned;
+    }
+
+    private static Chunk chunk(List<SourceInfo> sources, List<SourceInfo> context) {
+        List<Parser.Input> inputs = new ArrayList<>(sources.size());
+        List<Integer> positions = new ArrayList<>(sources.size());
+        Map<Parser.Input, SourceText> texts = new IdentityHashMap<>();
+        for (SourceInfo info : sources) {
+            inputs.add(info.getInput());
+            positions.add(info.getPosition());
+            texts.put(info.getInput(), info.getText());
+        }
+        List<Parser.Input> contextInputs = new ArrayList<>(context.size());
+        for (SourceInfo info : context) {
+            contextInputs.add(info.getInput());
+            texts.put(info.getInput(), info.getText());
+        }
+        return new Chunk(inputs, positions, contextInputs, texts);
+    }
+
+    private static List<SourceInfo> context(List<SourceInfo> chunk, Map<String, List<SourceInfo>> packages, long budget) {
+        Set<Parser.Input> inChunk = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<String> ownPackages = new LinkedHashSet<>();
+        Set<String> importedPackages = new LinkedHashSet<>();
+        for (SourceInfo info : chunk) {
+            inChunk.add(info.getInput());
+            ownPackages.add(info.getPackageName());
+        }
+        for (SourceInfo info : chunk) {
+            for (String imported : info.getImports()) {
+                String pkg = packageOf(imported, packages.keySet());
+                if (pkg != null && !ownPackages.contains(pkg)) {
+                    importedPackages.add(pkg);
+                }
+            }
+        }
+
+        List<SourceInfo> context = new ArrayList<>();
+        long cost = 0;
+        for (Set<String> candidates : Arrays.asList(ownPackages, importedPackages)) {
+            for (String pkg : candidates) {
+                for (SourceInfo info : packages.get(pkg)) {
+                    if (inChunk.contains(info.getInput())) {
+                        continue;
+                    }
+                    if (cost + info.getCost() > budget) {
+                        return context;
+                    }
+                    context.add(info);
+                    cost += info.getCost();
+                }
+            }
+        }
+        return context;
+    }
+
+    /**
+     * @return The longest prefix of the import that is the package of one of the inputs.
+     */
+    private static @Nullable String packageOf(String imported, Set<String> packageNames) {
+        String candidate = imported;
+        while (true) {
+            if (packageNames.contains(candidate)) {
+                return candidate;
+            }
+            int lastDot = candidate.lastIndexOf('.');
+            if (lastDot < 0) {
+                return null;
+            }
+            candidate = candidate.substring(0, lastDot);
+        }
+    }
+
+    @Value
+    public static class Chunk {
+        /**
+         * The inputs that are converted to LSTs.
+         */
+        List<Parser.Input> sources;
+
+        /**
+         * The position of each of the {@link #sources} in the planned inputs.
+         */
+        List<Integer> positions;
+
+        /**
+         * Inputs that only take part in resolution.
+         */
+        List<Parser.Input> context;
+
+        /**
+         * The texts of the sources and the context inputs, by input identity.
+         */
+        Map<Parser.Input, SourceText> texts;
+    }
+
+    /**
+     * The text of an input together with the encoding it was read with.
+     */
+    @Value
+    public static class SourceText {
+        String text;
+        Charset charset;
+        boolean charsetBomMarked;
+
+        public static SourceText read(Parser.Input input, ExecutionContext ctx) {
+            EncodingDetectingInputStream is = input.getSource(ctx);
+            String text = is.readFully();
+            return new SourceText(text, is.getCharset(), is.isCharsetBomMarked());
+        }
+    }
+
+    @Value
+    private static class SourceInfo {
+        Parser.Input input;
+        int position;
+        SourceText text;
+        String packageName;
+        List<String> imports;
+        long cost;
+
+        static SourceInfo read(Parser.Input input, int position, ExecutionContext ctx) {
+            SourceText text = SourceText.read(input, ctx);
+            HeaderScanner scanner = new HeaderScanner(new StringReader(text.getText()));
+            try {
+                scanner.scan();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new SourceInfo(input, position, text, scanner.packageName, scanner.imports,
+                    text.getText().length() * ESTIMATED_HEAP_BYTES_PER_SOURCE_BYTE);
+        }
+    }
+
+    /**
+     * Reads the package and import directives of a source, which can only be preceded by comments, a shebang line
+     * and file annotations, and stops at the first declaration.
+     */
+    private static class HeaderScanner {
+        private final PushbackReader reader;
+
+        String packageName = "";
+        final List<String> imports = new ArrayList<>();
+
+        HeaderScanner(Reader reader) {
+            this.reader = new PushbackReader(reader, 2);
+        }
+
+        void scan() throws IOException {
+            if (peek() == '#') {
+                skipLine();
+            }
+            String word = nextWord();
+            if ("package".equals(word)) {
+                packageName = qualifiedName();
+                word = nextWord();
+            }
+            while ("import".equals(word)) {
+                imports.add(qualifiedName());
+                word = nextWord();
+                if ("as".equals(word)) {
+                    nextWord();
+                    word = nextWord();
+                }
+            }
+        }
+
+        /**
+         * @return The next identifier, skipping trivia, semicolons and file annotations, or null at anything else.
+         */
+        private @Nullable String nextWord() throws IOException {
+            while (true) {
+                skipTrivia();
+                int c = peek();
+                if (c == ';') {
+                    next();
+                } else if (c == '@') {
+                    next();
+                    skipAnnotation();
+                } else if (c == '`' || c != -1 && Character.isJavaIdentifierStart(c)) {
+                    return identifier();
+                } else {
+                    return null;
+                }
+            }
+        }
+
+        /**
+         * Skips {@code file:Name(arguments)} or {@code file:[Name(arguments) ...]} after the {@code @}.
+         */
+        private void skipAnnotation() throws IOException {
+            identifier();
+            skipTrivia();
+            if (peek() == ':') {
+                next();
+                skipTrivia();
+            }
+            if (peek() == '[') {
+                skipBalanced();
+                return;
+            }
+            qualifiedName();
+            skipTrivia();
+            if (peek() == '(') {
+                skipBalanced();
+            }
+        }
+
+        private String qualifiedName() throws IOException {
+            skipTrivia();
+            StringBuilder name = new StringBuilder(identifier());
+            while (true) {
+                skipTrivia();
+                if (peek() != '.') {
+                    return name.toString();
+                }
+                next();
+                skipTrivia();
+                if (peek() == '*') {
+                    next();
+                    return name.toString();
+                }
+                name.append('.').append(identifier());
+            }
+        }
+
+        private String identifier() throws IOException {
+            StringBuilder identifier = new StringBuilder();
+            if (peek() == '`') {
+                next();
+                for (int c = next(); c != -1 && c != '`' && c != '\n'; c = next()) {
+                    identifier.append((char) c);
+                }
+                return identifier.toString();
+            }
+            while (peek() != -1 && Character.isJavaIdentifierPart(peek())) {
+                identifier.append((char) next());
+            }
+            return identifier.toString();
+        }
+
+        /**
+         * Skips a bracketed region and everything nested in it, including string literals and comments.
+         */
+        private void skipBalanced() throws IOException {
+            int depth = 0;
+            do {
+                skipTrivia();
+                int c = next();
+                if (c == -1) {
+                    return;
+                } else if (c == '(' || c == '[' || c == '{') {
+                    depth++;
+                } else if (c == ')' || c == ']' || c == '}') {
+                    depth--;
+                } else if (c == '"') {
+                    skipString();
+                } else if (c == '\'') {
+                    for (int d = next(); d != -1 && d != '\''; d = next()) {
+                        if (d == '\\') {
+                            next();
+                        }
+                    }
+                }
+            } while (depth > 0);
+        }
+
+        /**
+         * Skips a string literal after its opening quote, which is raw if it is a triple quote.
+         */
+        private void skipString() throws IOException {
+            if (peek() == '"') {
+                next();
+                if (peek() != '"') {
+                    // An empty string
+                    return;
+                }
+                next();
+                int quotes = 0;
+                for (int c = next(); c != -1; c = next()) {
+                    quotes = c == '"' ? quotes + 1 : 0;
+                    if (quotes == 3) {
+                        // Raw strings may end with more than three quotes
+                        while (peek() == '"') {
+                            next();
+                        }
+                        return;
+                    }
+                }
+                return;
+            }
+            for (int c = next(); c != -1 && c != '"'; c = next()) {
+                if (c == '\\') {
+                    next();
+                }
+            }
+        }
+
+        private void skipTrivia() throws IOException {
+            while (true) {
+                int c = peek();
+                if (c != -1 && Character.isWhitespace(c)) {
+                    next();
+                } else if (c == '/') {
+                    next();
+                    int d = peek();
+                    if (d == '/') {
+                        skipLine();
+                    } else if (d == '*') {
+                        next();
+                        skipBlockComment();
+                    } else {
+                        unread(c);
+                        return;
+                    }
+                } else {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Skips a block comment after its opening, which unlike in Java may be nested.
+         */
+        private void skipBlockComment() throws IOException {
+            int depth = 1;
+            int previous = 0;
+            for (int c = next(); c != -1; c = next()) {
+                if (previous == '/' && c == '*') {
+                    depth++;
+                    c = 0;
+                } else if (previous == '*' && c == '/') {
+                    if (--depth == 0) {
+                        return;
+                    }
+                    c = 0;
+                }
+                previous = c;
+            }
+        }
+
+        private void skipLine() throws IOException {
+            for (int c = next(); c != -1 && c != '\n'; c = next()) {
+                // skip
+            }
+        }
+
+        private int peek() throws IOException {
+            int c = reader.read();
+            if (c != -1) {
+                reader.unread(c);
+            }
+            return c;
+        }
+
+        private int next() throws IOException {
+            return reader.read();
+        }
+
+        private void unread(int c) throws IOException {
+            reader.unread(c);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.kotlin.internal;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.cli.jvm.compiler.VfsBasedProjectEnvironment;
+import org.jetbrains.kotlin.com.intellij.openapi.Disposable;
+import org.jetbrains.kotlin.com.intellij.openapi.util.Disposer;
+import org.jetbrains.kotlin.config.CompilerConfiguration;
+import org.jetbrains.kotlin.modules.Module;
+
+/**
+ * The configured compiler state that does not depend on the sources being parsed:
+ * the {@link CompilerConfiguration} with all classpath and JDK roots, the {@link KotlinCoreEnvironment}
+ * and the project environment used to create FIR sessions.
+ * <p>
+ * An environment may be used for any number of batches, but only by one parse at a time.
+ */
+@Getter
+@RequiredArgsConstructor
+public class KotlinCompilerEnvironment implements AutoCloseable {
+    private final Disposable disposable;
+    private final CompilerConfiguration compilerConfiguration;
+    private final KotlinCoreEnvironment coreEnvironment;
+    private final Module module;
+    private final VfsBasedProjectEnvironment projectEnvironment;
+
+    @Override
+    public void close() {
+        Disposer.dispose(disposable);
+    }
+}
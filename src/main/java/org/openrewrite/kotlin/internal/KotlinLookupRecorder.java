@@ -0,0 +1,59 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.kotlin.internal;
+
+import org.jetbrains.kotlin.incremental.components.LookupTracker;
+import org.jetbrains.kotlin.incremental.components.Position;
+import org.jetbrains.kotlin.incremental.components.ScopeKind;
+
+import java.util.*;
+
+/**
+ * Records the names each source file looks up during FIR resolution, the same information
+ * the compiler's incremental compilation uses to find the dependents of a changed file.
+ * <p>
+ * Lookups are recorded as {@code scopeFqName#name}, where the scope is either a package or a class.
+ */
+public class KotlinLookupRecorder implements LookupTracker {
+    private final Map<String, Set<String>> lookupsByFile = new HashMap<>();
+
+    @Override
+    public boolean getRequiresPosition() {
+        return false;
+    }
+
+    @Override
+    public synchronized void record(String filePath, Position position, String scopeFqName, ScopeKind scopeKind, String name) {
+        lookupsByFile.computeIfAbsent(filePath, k -> new HashSet<>()).add(scopeFqName + '#' + name);
+    }
+
+    public synchronized void clear() {
+        lookupsByFile.clear();
+    }
+
+    /**
+     * @param filePath The path of the virtual file the source was compiled from.
+     * @return The lookups recorded while resolving the file.
+     */
+    public synchronized Set<String> getLookups(String filePath) {
+        Set<String> lookups = lookupsByFile.get(filePath);
+        return lookups == null ? Collections.emptySet() : lookups;
+    }
+
+    public static String scopeOf(String lookup) {
+        return lookup.substring(0, lookup.lastIndexOf('#'));
+    }
+}
@@ -30,6 +30,7 @@ import org.openrewrite.kotlin.tree.*;
 import org.openrewrite.marker.Marker;
 import org.openrewrite.marker.Markers;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -37,6 +38,14 @@ import java.util.function.UnaryOperator;
 
 @SuppressWarnings("SwitchStatementWithTooFewBranches")
 public class KotlinPrinter<P> extends KotlinVisitor<PrintOutputCapture<P>> {
+    /**
+     * Chains of binaries or method selects at least this long, like generated concatenations or builder chains, are
+     * printed in a loop rather than by recursion, so that they do not overflow the stack. The inner elements of such
+     * a chain are printed without going through {@link #visit(Tree, Object)}, so shorter chains are visited like any
+     * other tree.
+     */
+    static final int ITERATIVE_CHAIN_LENGTH = 256;
+
     private final KotlinJavaPrinter<P> delegate;
 
     public KotlinPrinter() {
@@ -95,7 +104,62 @@ public class KotlinPrinter<P> extends KotlinVisitor<PrintOutputCapture<P>> {
 
     @Override
     public J visitBinary(K.Binary binary, PrintOutputCapture<P> p) {
-        beforeSyntax(binary, Space.Location.BINARY_PREFIX, p);
+        if (!isLongChain(binary)) {
+            beforeSyntax(binary, Space.Location.BINARY_PREFIX, p);
+            visit(binary.getLeft(), p);
+            printAfterLeft(binary, p);
+            return binary;
+        }
+
+        // The left operands of a long chain like `a ?: b ?: c ...` are printed in a loop rather than by recursion
+        List<K.Binary> chain = new ArrayList<>();
+        List<Cursor> cursors = new ArrayList<>();
+        Cursor cursor = getCursor();
+        for (K.Binary b = binary; ; b = (K.Binary) b.getLeft()) {
+            if (b != binary) {
+                cursor = new Cursor(cursor, b);
+            }
+            chain.add(b);
+            cursors.add(cursor);
+            if (!(b.getLeft() instanceof K.Binary)) {
+                break;
+            }
+        }
+
+        for (int i = 0; i < chain.size(); i++) {
+            setCursor(cursors.get(i));
+            beforeSyntax(chain.get(i), Space.Location.BINARY_PREFIX, p);
+        }
+        visit(chain.get(chain.size() - 1).getLeft(), p);
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            setCursor(cursors.get(i));
+            printAfterLeft(chain.get(i), p);
+        }
+        return binary;
+    }
+
+    private void printAfterLeft(K.Binary binary, PrintOutputCapture<P> p) {
+        visitSpace(binary.getPadding().getOperator().getBefore(), KSpace.Location.BINARY_OPERATOR, p);
+        p.append(binaryOperator(binary));
+
+        visit(binary.getRight(), p);
+
+        visitSpace(binary.getAfter(), KSpace.Location.BINARY_SUFFIX, p);
+        afterSyntax(binary, p);
+    }
+
+    private static boolean isLongChain(K.Binary binary) {
+        Expression left = binary.getLeft();
+        for (int length = 1; left instanceof K.Binary; length++) {
+            if (length >= ITERATIVE_CHAIN_LENGTH) {
+                return true;
+            }
+            left = ((K.Binary) left).getLeft();
+        }
+        return false;
+    }
+
+    private static String binaryOperator(K.Binary binary) {
         String keyword = "";
         switch (binary.getOperator()) {
             case Contains:
@@ -120,15 +184,7 @@ public class KotlinPrinter<P> extends KotlinVisitor<PrintOutputCapture<P>> {
                 keyword = "..<";
                 break;
         }
-        visit(binary.getLeft(), p);
-        visitSpace(binary.getPadding().getOperator().getBefore(), KSpace.Location.BINARY_OPERATOR, p);
-        p.append(keyword);
-
-        visit(binary.getRight(), p);
-
-        visitSpace(binary.getAfter(), KSpace.Location.BINARY_SUFFIX, p);
-        afterSyntax(binary, p);
-        return binary;
+        return keyword;
     }
 
     @Override
@@ -516,6 +572,59 @@ public class KotlinPrinter<P> extends KotlinVisitor<PrintOutputCapture<P>> {
 
         @Override
         public J visitBinary(J.Binary binary, PrintOutputCapture<P> p) {
+            if (!isLongChain(binary)) {
+                beforeSyntax(binary, Space.Location.BINARY_PREFIX, p);
+                visit(binary.getLeft(), p);
+                printAfterLeft(binary, p);
+                return binary;
+            }
+
+            // The left operands of a long chain, like a generated concatenation, are printed in a loop rather than by recursion
+            List<J.Binary> chain = new ArrayList<>();
+            List<Cursor> cursors = new ArrayList<>();
+            Cursor cursor = getCursor();
+            for (J.Binary b = binary; ; b = (J.Binary) b.getLeft()) {
+                if (b != binary) {
+                    cursor = new Cursor(cursor, b);
+                }
+                chain.add(b);
+                cursors.add(cursor);
+                if (!(b.getLeft() instanceof J.Binary)) {
+                    break;
+                }
+            }
+
+            for (int i = 0; i < chain.size(); i++) {
+                setCursor(cursors.get(i));
+                beforeSyntax(chain.get(i), Space.Location.BINARY_PREFIX, p);
+            }
+            visit(chain.get(chain.size() - 1).getLeft(), p);
+            for (int i = chain.size() - 1; i >= 0; i--) {
+                setCursor(cursors.get(i));
+                printAfterLeft(chain.get(i), p);
+            }
+            return binary;
+        }
+
+        private void printAfterLeft(J.Binary binary, PrintOutputCapture<P> p) {
+            visitSpace(binary.getPadding().getOperator().getBefore(), Space.Location.BINARY_OPERATOR, p);
+            p.append(binaryOperator(binary));
+            visit(binary.getRight(), p);
+            afterSyntax(binary, p);
+        }
+
+        private static boolean isLongChain(J.Binary binary) {
+            Expression left = binary.getLeft();
+            for (int length = 1; left instanceof J.Binary; length++) {
+                if (length >= ITERATIVE_CHAIN_LENGTH) {
+                    return true;
+                }
+                left = ((J.Binary) left).getLeft();
+            }
+            return false;
+        }
+
+        private static String binaryOperator(J.Binary binary) {
             String keyword = "";
             switch (binary.getOperator()) {
                 case Addition:
@@ -576,13 +685,7 @@ public class KotlinPrinter<P> extends KotlinVisitor<PrintOutputCapture<P>> {
                     keyword = "&&";
                     break;
             }
-            beforeSyntax(binary, Space.Location.BINARY_PREFIX, p);
-            visit(binary.getLeft(), p);
-            visitSpace(binary.getPadding().getOperator().getBefore(), Space.Location.BINARY_OPERATOR, p);
-            p.append(keyword);
-            visit(binary.getRight(), p);
-            afterSyntax(binary, p);
-            return binary;
+            return keyword;
         }
 
         @Override
@@ -968,11 +1071,67 @@ public class KotlinPrinter<P> extends KotlinVisitor<PrintOutputCapture<P>> {
 
         @Override
         public J visitMethodInvocation(J.MethodInvocation method, PrintOutputCapture<P> p) {
-            boolean indexedAccess = method.getMarkers().findFirst(IndexedAccess.class).isPresent();
+            if (!isLongChain(method)) {
+                beforeSyntax(method, Space.Location.METHOD_INVOCATION_PREFIX, p);
+                visitRightPadded(method.getPadding().getSelect(), JRightPadded.Location.METHOD_SELECT, p);
+                printAfterSelect(method, p);
+                return method;
+            }
 
-            beforeSyntax(method, Space.Location.METHOD_INVOCATION_PREFIX, p);
+            // The selects of a long call chain, like a generated builder chain, are printed in a loop rather than by recursion
+            List<J.MethodInvocation> chain = new ArrayList<>();
+            List<Cursor> cursors = new ArrayList<>();
+            Cursor cursor = getCursor();
+            for (J.MethodInvocation m = method; ; m = (J.MethodInvocation) m.getSelect()) {
+                chain.add(m);
+                cursors.add(cursor);
+                JRightPadded<Expression> select = chainedSelect(m);
+                if (select == null) {
+                    break;
+                }
+                // The same cursor path as visiting the select, which passes through its padding
+                cursor = new Cursor(new Cursor(cursor, select), select.getElement());
+            }
+
+            for (int i = 0; i < chain.size(); i++) {
+                setCursor(cursors.get(i));
+                beforeSyntax(chain.get(i), Space.Location.METHOD_INVOCATION_PREFIX, p);
+            }
+            visitRightPadded(chain.get(chain.size() - 1).getPadding().getSelect(), JRightPadded.Location.METHOD_SELECT, p);
+            for (int i = chain.size() - 1; i >= 0; i--) {
+                J.MethodInvocation m = chain.get(i);
+                setCursor(cursors.get(i));
+                if (i < chain.size() - 1) {
+                    visitSpace(Objects.requireNonNull(m.getPadding().getSelect()).getAfter(), JRightPadded.Location.METHOD_SELECT.getAfterLocation(), p);
+                }
+                printAfterSelect(m, p);
+            }
+            return method;
+        }
+
+        /**
+         * @return The select of a method invocation if it is a method invocation that is printed as part of the chain.
+         */
+        private static @Nullable JRightPadded<Expression> chainedSelect(J.MethodInvocation method) {
+            JRightPadded<Expression> select = method.getPadding().getSelect();
+            return select != null && select.getElement() instanceof J.MethodInvocation && select.getMarkers().getMarkers().isEmpty() ?
+                    select : null;
+        }
+
+        private static boolean isLongChain(J.MethodInvocation method) {
+            JRightPadded<Expression> select = chainedSelect(method);
+            for (int length = 1; select != null; length++) {
+                if (length >= ITERATIVE_CHAIN_LENGTH) {
+                    return true;
+                }
+                select = chainedSelect((J.MethodInvocation) select.getElement());
+            }
+            return false;
+        }
+
+        private void printAfterSelect(J.MethodInvocation method, PrintOutputCapture<P> p) {
+            boolean indexedAccess = method.getMarkers().findFirst(IndexedAccess.class).isPresent();
 
-            visitRightPadded(method.getPadding().getSelect(), JRightPadded.Location.METHOD_SELECT, p);
             if (method.getSelect() != null && !method.getMarkers().findFirst(Extension.class).isPresent() && !indexedAccess) {
                 if (method.getMarkers().findFirst(IsNullSafe.class).isPresent()) {
                     p.append("?");
@@ -992,7 +1151,6 @@ public class KotlinPrinter<P> extends KotlinVisitor<PrintOutputCapture<P>> {
             visitArgumentsContainer(method.getPadding().getArguments(), Space.Location.METHOD_INVOCATION_ARGUMENTS, p);
 
             afterSyntax(method, p);
-            return method;
         }
 
         @Override
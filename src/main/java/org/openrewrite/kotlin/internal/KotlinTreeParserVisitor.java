@@ -32,7 +32,6 @@ import org.jetbrains.kotlin.fir.symbols.impl.FirConstructorSymbol;
 import org.jetbrains.kotlin.fir.symbols.impl.FirNamedFunctionSymbol;
 import org.jetbrains.kotlin.fir.symbols.impl.FirPropertySymbol;
 import org.jetbrains.kotlin.kdoc.psi.api.KDoc;
-import org.jetbrains.kotlin.kdoc.psi.impl.KDocSection;
 import org.jetbrains.kotlin.lexer.KtModifierKeywordToken;
 import org.jetbrains.kotlin.lexer.KtTokens;
 import org.jetbrains.kotlin.parsing.ParseUtilsKt;
@@ -44,7 +43,6 @@ import org.openrewrite.ExecutionContext;
 import org.openrewrite.FileAttributes;
 import org.openrewrite.ParseExceptionResult;
 import org.openrewrite.Tree;
-import org.openrewrite.internal.EncodingDetectingInputStream;
 import org.openrewrite.internal.ListUtils;
 import org.openrewrite.java.marker.ImplicitReturn;
 import org.openrewrite.java.marker.OmitParentheses;
@@ -74,6 +72,11 @@ import static org.openrewrite.Tree.randomId;
 @SuppressWarnings("ConstantValue")
 public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
     private final KotlinSource kotlinSource;
+
+    /**
+     * Null when parsing without type attribution, in which case the LST is built from the PSI alone.
+     */
+    @Nullable
     private final PsiElementAssociations psiElementAssociations;
     private final List<NamedStyles> styles;
     private final Path sourcePath;
@@ -85,10 +88,21 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
     private final Boolean charsetBomMarked;
     private final Stack<KtElement> ownerStack = new Stack<>();
     private final ExecutionContext executionContext;
-    private final List<Integer> cRLFLocations;
+    private final int[] cRLFLocations;
+
+    /**
+     * The normalized source text the PSI was parsed from, so that the text of an element can be sliced from it
+     * instead of being rebuilt from the tree.
+     */
+    private final CharSequence fileText;
+
+    /**
+     * Left operands and receivers of binary and qualified expression chains that were converted ahead of their parent.
+     */
+    private final Map<PsiElement, J> preConverted = new IdentityHashMap<>();
 
     public KotlinTreeParserVisitor(KotlinSource kotlinSource,
-                                   PsiElementAssociations psiElementAssociations,
+                                   @Nullable PsiElementAssociations psiElementAssociations,
                                    List<NamedStyles> styles,
                                    @Nullable Path relativeTo,
                                    ExecutionContext ctx) {
@@ -97,12 +111,12 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
         this.styles = styles;
         sourcePath = kotlinSource.getInput().getRelativePath(relativeTo);
         fileAttributes = kotlinSource.getInput().getFileAttributes();
-        EncodingDetectingInputStream stream = kotlinSource.getInput().getSource(ctx);
-        charset = stream.getCharset();
-        charsetBomMarked = stream.isCharsetBomMarked();
+        charset = kotlinSource.getCharset();
+        charsetBomMarked = kotlinSource.isCharsetBomMarked();
         ownerStack.push(kotlinSource.getKtFile());
         executionContext = ctx;
         cRLFLocations = kotlinSource.getCRLFLocations();
+        fileText = kotlinSource.getKtFile().getViewProvider().getContents();
     }
 
     public K.CompilationUnit parse() {
@@ -268,17 +282,17 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
 
     @Override
     public J visitCallableReferenceExpression(KtCallableReferenceExpression expression, ExecutionContext data) {
-        FirElement firElement = psiElementAssociations.primary(expression.getCallableReference());
-        if (!(firElement instanceof FirResolvedCallableReference || firElement instanceof FirCallableReferenceAccess)) {
+        FirElement firElement = primary(expression.getCallableReference());
+        if (psiElementAssociations != null && !(firElement instanceof FirResolvedCallableReference || firElement instanceof FirCallableReferenceAccess)) {
             throw new UnsupportedOperationException(java.lang.String.format("Unsupported callable reference: fir class: %s, fir: %s, psi class: %s.",
                     firElement == null ? "null" : firElement.getClass().getName(),
-                    PsiTreePrinter.print(psiElementAssociations.primary(expression)),
+                    PsiTreePrinter.print(primary(expression)),
                     expression.getClass().getName()));
         }
         JavaType.Method methodReferenceType = null;
         JavaType.Variable fieldReferenceType = null;
-        if (firElement instanceof FirResolvedCallableReference) {
-            FirResolvedCallableReference reference = (FirResolvedCallableReference) psiElementAssociations.primary(expression.getCallableReference());
+        if (psiElementAssociations != null && firElement instanceof FirResolvedCallableReference) {
+            FirResolvedCallableReference reference = (FirResolvedCallableReference) firElement;
             if (reference != null && reference.getResolvedSymbol() instanceof FirNamedFunctionSymbol) {
                 methodReferenceType = psiElementAssociations.getTypeMapping().methodDeclarationType(
                         ((FirNamedFunctionSymbol) reference.getResolvedSymbol()).getFir(),
@@ -551,12 +565,13 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
 
     @Override
     public J visitEscapeStringTemplateEntry(KtEscapeStringTemplateEntry entry, ExecutionContext data) {
+        String text = text(entry);
         return new J.Literal(
                 randomId(),
                 Space.EMPTY,
                 Markers.EMPTY,
-                entry.getText(),
-                entry.getText(),
+                text,
+                text,
                 null,
                 JavaType.Primitive.String
         ).withPrefix(deepPrefix(entry));
@@ -846,28 +861,12 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
         }
 
         // Handle parentheses or potential nested parentheses
-        Stack<Pair<Integer, Integer>> parenPairs = new Stack<>();
-        List<PsiElement> allChildren = getAllChildren(nullableType);
+        List<Pair<PsiElement, PsiElement>> parenPairs = findParenthesesPairs(nullableType);
 
         TypeTree j = typeTree;
-        int l = 0;
-        int r = allChildren.size() - 1;
-        while (l < r) {
-            l = findFirstLPAR(allChildren, l);
-            r = findLastRPAR(allChildren, r);
-            if (l * r < 0) {
-                throw new UnsupportedOperationException("Unpaired parentheses!");
-            }
-            if (l < 0 || r < 0) {
-                break;
-            }
-            parenPairs.add(new Pair<>(l++, r--));
-        }
-
-        while (!parenPairs.empty()) {
-            Pair<Integer, Integer> parenPair = parenPairs.pop();
-            PsiElement lPAR = allChildren.get(parenPair.getFirst());
-            PsiElement rPAR = allChildren.get(parenPair.getSecond());
+        for (int i = parenPairs.size() - 1; i >= 0; i--) {
+            PsiElement lPAR = parenPairs.get(i).getFirst();
+            PsiElement rPAR = parenPairs.get(i).getSecond();
             j = new J.ParenthesizedTypeTree(randomId(),
                     Space.EMPTY,
                     Markers.EMPTY,
@@ -1143,6 +1142,12 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
 
     @Override
     public J visitSafeQualifiedExpression(KtSafeQualifiedExpression expression, ExecutionContext data) {
+        J converted = preConverted.remove(expression);
+        if (converted != null) {
+            return converted;
+        }
+        convertLeftSpine(expression, data);
+
         J j = visitQualifiedExpression(expression, data);
         return j.withMarkers(j.getMarkers().addIfAbsent(new IsNullSafe(randomId())));
     }
@@ -1351,7 +1356,7 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
         List<J.Annotation> annotations = new ArrayList<>();
         J.Identifier typeParamName = (J.Identifier) requireNonNull(constraint.getSubjectTypeParameterName()).accept(this, data);
         PsiElement ref = PsiTreeUtil.getChildOfType(constraint, KtTypeReference.class);
-        typeParamName = typeParamName.withType(psiElementAssociations.type(ref, owner(constraint)));
+        typeParamName = typeParamName.withType(psiElementAssociations == null ? null : psiElementAssociations.type(ref, owner(constraint)));
         TypeTree typeTree = (TypeTree) requireNonNull(constraint.getBoundTypeReference()).accept(this, data);
 
         return new J.TypeParameter(
@@ -1716,9 +1721,11 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
                                 Space.EMPTY,
                                 Markers.build(singletonList(ParseExceptionResult.build(KotlinParser.builder().build(), e)
                                         .withTreeType(declaration.getClass().getName()))),
-                                file.getText().substring(PsiUtilsKt.getStartOffsetSkippingComments(declaration),
-                                        declaration.getTextRange().getEndOffset())));
+                                fileText.subSequence(PsiUtilsKt.getStartOffsetSkippingComments(declaration),
+                                        declaration.getTextRange().getEndOffset()).toString()));
             }
+            // Chains whose conversion failed leave their converted left operands behind
+            preConverted.clear();
 
             statements.add(maybeTrailingSemicolon(statement, declaration));
         }
@@ -1868,10 +1875,20 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
         assert expression.getLeft() != null;
         assert expression.getRight() != null;
 
+        J converted = preConverted.remove(expression);
+        if (converted != null) {
+            return converted;
+        }
+        convertLeftSpine(expression, data);
+
         KtOperationReferenceExpression operationReference = expression.getOperationReference();
         J.Binary.Type javaBinaryType = mapJBinaryType(operationReference);
         J.AssignmentOperation.Type assignmentOperationType = javaBinaryType == null ? mapAssignmentOperationType(operationReference) : null;
         K.Binary.Type kotlinBinaryType = javaBinaryType == null && assignmentOperationType == null ? mapKBinaryType(operationReference) : null;
+        if (javaBinaryType == null && assignmentOperationType == null && kotlinBinaryType == null &&
+            operationReference.getOperationSignTokenType() != KtTokens.EQ) {
+            return mapFunctionCall(expression, data);
+        }
 
         Expression left = convertToExpression(expression.getLeft().accept(this, data)).withPrefix(Space.EMPTY);
         Expression right = convertToExpression((expression.getRight()).accept(this, data))
@@ -1920,7 +1937,37 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
             ));
         }
 
-        return mapFunctionCall(expression, data);
+        throw new IllegalStateException("Unexpected binary operation " + operationReference.getText());
+    }
+
+    /**
+     * Converts the left operands of a chain of binary or qualified expressions, like a long concatenation or a builder
+     * call chain, from the innermost out. Each parent then finds its left operand already converted, so that the
+     * stack depth of converting a chain does not grow with its length.
+     */
+    private void convertLeftSpine(KtExpression expression, ExecutionContext data) {
+        Deque<KtExpression> spine = new ArrayDeque<>();
+        for (KtExpression left = leftOperand(expression);
+             left != null && leftOperand(left) != null && !preConverted.containsKey(left);
+             left = leftOperand(left)) {
+            spine.push(left);
+        }
+        // Short chains are converted by plain recursion
+        if (spine.size() > 1) {
+            while (!spine.isEmpty()) {
+                KtExpression left = spine.pop();
+                preConverted.put(left, left.accept(this, data));
+            }
+        }
+    }
+
+    private static @Nullable KtExpression leftOperand(KtExpression expression) {
+        if (expression instanceof KtBinaryExpression) {
+            return ((KtBinaryExpression) expression).getLeft();
+        } else if (expression instanceof KtQualifiedExpression) {
+            return ((KtQualifiedExpression) expression).getReceiverExpression();
+        }
+        return null;
     }
 
     private J.AssignmentOperation.@Nullable Type mapAssignmentOperationType(KtOperationReferenceExpression operationReference) {
@@ -1976,7 +2023,7 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
         if (expression.getCalleeExpression() == null) {
             throw new UnsupportedOperationException("TODO");
         }
-        PsiElementAssociations.ExpressionType type = psiElementAssociations.getCallType(expression);
+        PsiElementAssociations.ExpressionType type = psiElementAssociations == null ? null : psiElementAssociations.getCallType(expression);
         if (type == PsiElementAssociations.ExpressionType.CONSTRUCTOR) {
             JavaType.Method mt = methodInvocationType(expression);
 
@@ -2097,16 +2144,17 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
     public J visitConstantExpression(KtConstantExpression expression, ExecutionContext data) {
         IElementType elementType = expression.getElementType();
         JavaType.Primitive type = primitiveType(expression);
+        String text = text(expression);
         Object value;
         if (elementType == KtNodeTypes.INTEGER_CONSTANT || elementType == KtNodeTypes.FLOAT_CONSTANT) {
-            value = ParseUtilsKt.parseNumericLiteral(expression.getText(), elementType);
+            value = ParseUtilsKt.parseNumericLiteral(text, elementType);
             if (type == JavaType.Primitive.Int && value instanceof Long) {
                 value = ((Long) value).intValue();
             }
         } else if (elementType == KtNodeTypes.BOOLEAN_CONSTANT) {
-            value = ParseUtilsKt.parseBoolean(expression.getText());
+            value = ParseUtilsKt.parseBoolean(text);
         } else if (elementType == KtNodeTypes.CHARACTER_CONSTANT) {
-            value = unescape(expression.getText().substring(1, expression.getText().length() - 1));
+            value = unescape(text.substring(1, text.length() - 1));
         } else if (elementType == KtNodeTypes.NULL) {
             value = null;
         } else {
@@ -2117,7 +2165,7 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
                 deepPrefix(expression),
                 Markers.EMPTY,
                 value,
-                expression.getText(),
+                text,
                 null,
                 type
         );
@@ -2454,6 +2502,12 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
     @Override
     public J visitDotQualifiedExpression(KtDotQualifiedExpression expression, ExecutionContext data) {
         assert expression.getSelectorExpression() != null;
+        J converted = preConverted.remove(expression);
+        if (converted != null) {
+            return converted;
+        }
+        convertLeftSpine(expression, data);
+
         Space prefix = deepPrefix(expression);
         if (expression.getSelectorExpression() instanceof KtCallExpression) {
             KtCallExpression callExpression = (KtCallExpression) expression.getSelectorExpression();
@@ -2605,7 +2659,7 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
     }
 
     private @Nullable FirResolvedImport getResolvedImport(KtImportDirective importDirective) {
-        FirElement primary = psiElementAssociations.primary(importDirective);
+        FirElement primary = primary(importDirective);
         if (primary instanceof FirResolvedImport) {
             return (FirResolvedImport) primary;
         }
@@ -3032,10 +3086,9 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
             return modifiers;
         }
 
-        // don't use iterator of `PsiTreeUtil.firstChild` and `getNextSibling`, since it could skip one layer, example test "paramAnnotation"
+        // don't use `PsiTreeUtil.firstChild`, since it descends to the deepest first child and could skip one layer, example test "paramAnnotation"
         // also don't use `modifierList.getChildren()` since it could miss some element
-        for (Iterator<PsiElement> it = PsiUtilsKt.getAllChildren(modifierList).iterator(); it.hasNext(); ) {
-            PsiElement child = it.next();
+        for (PsiElement child = modifierList.getFirstChild(); child != null; child = child.getNextSibling()) {
             if (isSpace(child.getNode())) {
                 continue;
             }
@@ -3224,27 +3277,11 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
         }
 
         // Handle potential redundant nested parentheses
-        Stack<Pair<Integer, Integer>> parenPairs = new Stack<>();
-        List<PsiElement> allChildren = getAllChildren(typeReference);
+        List<Pair<PsiElement, PsiElement>> parenPairs = findParenthesesPairs(typeReference);
 
-        int l = 0;
-        int r = allChildren.size() - 1;
-        while (l < r) {
-            l = findFirstLPAR(allChildren, l);
-            r = findLastRPAR(allChildren, r);
-            if (l * r < 0) {
-                throw new UnsupportedOperationException("Unpaired parentheses!");
-            }
-            if (l < 0 || r < 0) {
-                break;
-            }
-            parenPairs.add(new Pair<>(l++, r--));
-        }
-
-        while (!parenPairs.empty()) {
-            Pair<Integer, Integer> parenPair = parenPairs.pop();
-            PsiElement lPAR = allChildren.get(parenPair.getFirst());
-            PsiElement rPAR = allChildren.get(parenPair.getSecond());
+        for (int i = parenPairs.size() - 1; i >= 0; i--) {
+            PsiElement lPAR = parenPairs.get(i).getFirst();
+            PsiElement rPAR = parenPairs.get(i).getSecond();
             TypeTree typeTree = j instanceof K.FunctionType ? ((K.FunctionType) j).withReturnType(((K.FunctionType) j).getReturnType().withAfter(Space.EMPTY)) : (TypeTree) j;
             j = new J.ParenthesizedTypeTree(randomId(),
                     Space.EMPTY,
@@ -3633,23 +3670,27 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
         if (psi == null) {
             return JavaType.Unknown.getInstance();
         }
-        return psiElementAssociations.type(psi, owner(psi));
+        return psiElementAssociations == null ? null : psiElementAssociations.type(psi, owner(psi));
     }
 
     private JavaType.Primitive primitiveType(PsiElement psi) {
-        return psiElementAssociations.primitiveType(psi);
+        return psiElementAssociations == null ? JavaType.Primitive.None : psiElementAssociations.primitiveType(psi);
     }
 
     private JavaType.@Nullable Variable variableType(PsiElement psi, @Nullable FirElement parent) {
-        return psiElementAssociations.variableType(psi, parent);
+        return psiElementAssociations == null ? null : psiElementAssociations.variableType(psi, parent);
     }
 
     private JavaType.@Nullable Method methodDeclarationType(PsiElement psi) {
-        return psiElementAssociations.methodDeclarationType(psi);
+        return psiElementAssociations == null ? null : psiElementAssociations.methodDeclarationType(psi);
     }
 
     private JavaType.@Nullable Method methodInvocationType(PsiElement psi) {
-        return psiElementAssociations.methodInvocationType(psi);
+        return psiElementAssociations == null ? null : psiElementAssociations.methodInvocationType(psi);
+    }
+
+    private @Nullable FirElement primary(PsiElement psi) {
+        return psiElementAssociations == null ? null : psiElementAssociations.primary(psi);
     }
 
     /*====================================================================
@@ -3702,9 +3743,9 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
     private @Nullable FirElement owner(PsiElement element) {
         KtElement owner = ownerStack.peek() == element ? ownerStack.get(ownerStack.size() - 2) : ownerStack.peek();
         if (owner instanceof KtDeclaration) {
-            return psiElementAssociations.primary(owner);
+            return primary(owner);
         } else if (owner instanceof KtFile) {
-            return psiElementAssociations.primary(owner);
+            return primary(owner);
         }
         return null;
     }
@@ -3807,17 +3848,6 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
         return space(first);
     }
 
-    private static List<PsiElement> getAllChildren(PsiElement psiElement) {
-        List<PsiElement> allChildren = new ArrayList<>();
-
-        Iterator<PsiElement> iterator = PsiUtilsKt.getAllChildren(psiElement).iterator();
-        while (iterator.hasNext()) {
-            PsiElement it = iterator.next();
-            allChildren.add(it);
-        }
-        return allChildren;
-    }
-
     private @Nullable PsiElement findFirstPrefixSpace(@Nullable PsiElement element) {
         if (element == null) {
             return null;
@@ -3840,14 +3870,8 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
             return null;
         }
 
-        Iterator<PsiElement> iterator = PsiUtilsKt.getAllChildren(element).iterator();
-        PsiElement first = iterator.next();
-
-        if (first != null) {
-            return isSpace(first.getNode()) ? first : null;
-        }
-
-        return null;
+        PsiElement first = element.getFirstChild();
+        return first != null && isSpace(first.getNode()) ? first : null;
     }
 
     private Space suffix(@Nullable PsiElement element) {
@@ -3927,24 +3951,44 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
         return element instanceof LeafPsiElement && ((LeafPsiElement) element).getElementType() == KtTokens.RPAR;
     }
 
-    private static int findFirstLPAR(List<PsiElement> elements, int start) {
-        int ret = -1;
-        for (int i = start; i < elements.size(); i++) {
-            if (isLPAR(elements.get(i))) {
-                return i;
-            }
+    /**
+     * Pairs the parentheses among the children of the element from both ends, walking the siblings rather than
+     * copying the children into a list.
+     *
+     * @return The pairs of parentheses, outermost first.
+     */
+    private static List<Pair<PsiElement, PsiElement>> findParenthesesPairs(PsiElement element) {
+        List<Pair<PsiElement, PsiElement>> pairs = new ArrayList<>(2);
+        PsiElement lChild = element.getFirstChild();
+        PsiElement rChild = element.getLastChild();
+        int l = 0;
+        int r = -1;
+        for (PsiElement child = lChild; child != null; child = child.getNextSibling()) {
+            r++;
         }
-        return ret;
-    }
 
-    private static int findLastRPAR(List<PsiElement> elements, int end) {
-        int ret = -1;
-        for (int i = end; i >= 0; i--) {
-            if (isRPAR(elements.get(i))) {
-                return i;
+        while (l < r) {
+            while (lChild != null && !isLPAR(lChild)) {
+                lChild = lChild.getNextSibling();
+                l++;
             }
+            while (rChild != null && !isRPAR(rChild)) {
+                rChild = rChild.getPrevSibling();
+                r--;
+            }
+            if ((lChild == null) != (rChild == null)) {
+                throw new UnsupportedOperationException("Unpaired parentheses!");
+            }
+            if (lChild == null) {
+                break;
+            }
+            pairs.add(new Pair<>(lChild, rChild));
+            lChild = lChild.getNextSibling();
+            rChild = rChild.getPrevSibling();
+            l++;
+            r--;
         }
-        return ret;
+        return pairs;
     }
 
     private static boolean isCRLF(ASTNode node) {
@@ -3952,15 +3996,16 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
     }
 
     private String nodeRangeText(@Nullable ASTNode first, @Nullable ASTNode last) {
-        StringBuilder builder = new StringBuilder();
-        while (first != null) {
-            builder.append(first.getText());
-            if (first == last) {
-                break;
+        if (first == null) {
+            return "";
+        }
+        if (last == null) {
+            last = first;
+            while (last.getTreeNext() != null) {
+                last = last.getTreeNext();
             }
-            first = first.getTreeNext();
         }
-        return builder.toString();
+        return fileText.subSequence(first.getStartOffset(), last.getTextRange().getEndOffset()).toString();
     }
 
     private List<J.Annotation> mapAnnotations(List<KtAnnotationEntry> ktAnnotationEntries, ExecutionContext data) {
@@ -4002,10 +4047,9 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
 
         if (entries.size() == 1) {
             // Handle potential redundant parentheses
-            List<PsiElement> allChildren = getAllChildren(ktDestructuringDeclaration);
-            int l = findFirstLPAR(allChildren, 0);
-            int r = findLastRPAR(allChildren, allChildren.size() - 1);
-            if (l >= 0 && l < r) {
+            PsiElement lPAR = findFirstChild(ktDestructuringDeclaration, KotlinTreeParserVisitor::isLPAR);
+            PsiElement rPAR = findLastChild(ktDestructuringDeclaration, KotlinTreeParserVisitor::isRPAR);
+            if (lPAR != null && rPAR != null && lPAR.getTextRange().getStartOffset() < rPAR.getTextRange().getStartOffset()) {
                 j = new J.Parentheses<>(randomId(), Space.EMPTY, Markers.EMPTY, padRight(j, Space.EMPTY));
             }
         }
@@ -4222,89 +4266,122 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
 
     // replace `\n` to CRLF back if it's CRLF in the source
     private String maybeAdjustCRLF(PsiElement element) {
-        String text = element.getText();
         boolean isStringTemplateEntry = element instanceof KtLiteralStringTemplateEntry;
         if (!isSpace(element.getNode()) && !isStringTemplateEntry) {
-            return text;
-        }
-
-        TextRange range = element.getTextRange();
-        int left = findFirstGreaterOrEqual(cRLFLocations, range.getStartOffset());
-        int right = left != -1 ? findFirstLessOrEqual(cRLFLocations, range.getEndOffset(), left) : -1;
-        boolean hasCRLF = left != -1 && left <= right;
-        if (hasCRLF) {
-            for (int i = right; i >= left; i--) {
-                text = replaceNewLineWithCRLF(text, cRLFLocations.get(i) - range.getStartOffset());
-            }
+            return element.getText();
         }
-        return text;
+        return sourceText(element.getTextRange());
     }
 
     private Space kdocToSpace(KDoc kDoc) {
-        StringBuilder sb = new StringBuilder();
-
-        Iterator<PsiElement> iterator = PsiUtilsKt.getAllChildren(kDoc).iterator();
-        while (iterator.hasNext()) {
-            PsiElement it = iterator.next();
-            String text = it.getText();
-            if (it instanceof PsiWhiteSpace) {
-                text = replaceCRLF((PsiWhiteSpace) it);
-            } else if (it instanceof KDocSection) {
-                text = KDocSectionToString((KDocSection) it);
-            }
-
-            sb.append(text);
-        }
-
-        String source = sb.toString();
+        String source = sourceText(kDoc.getTextRange());
         String comment = source.substring(2, source.length() - 2);
         List<Comment> comments = new ArrayList<>(1);
         comments.add(new TextComment(true, comment, "", Markers.EMPTY));
         return Space.build("", comments);
     }
 
-    private String KDocSectionToString(KDocSection kDocSection) {
-        StringBuilder sb = new StringBuilder();
-        Iterator<PsiElement> iterator = PsiUtilsKt.getAllChildren(kDocSection).iterator();
-        while (iterator.hasNext()) {
-            PsiElement it = iterator.next();
-            String text = it.getText();
-            if (it instanceof PsiWhiteSpace) {
-                text = replaceCRLF((PsiWhiteSpace) it);
-            }
-            sb.append(text);
-        }
+    private void appendWhitespace(StringBuilder whitespace, PsiElement element) {
+        TextRange range = element.getTextRange();
+        appendSourceText(whitespace, range.getStartOffset(), range.getEndOffset(), firstCRLFAtOrAfter(range.getStartOffset()));
+    }
+
+    /**
+     * @return The text of the element, sliced from the source text rather than rebuilt from the PSI tree.
+     */
+    private String text(PsiElement element) {
+        TextRange range = element.getTextRange();
+        return fileText.subSequence(range.getStartOffset(), range.getEndOffset()).toString();
+    }
 
+    /**
+     * @return The text of the range as it is in the source, with the line breaks that were CRLF restored.
+     */
+    private String sourceText(TextRange range) {
+        int start = range.getStartOffset();
+        int end = range.getEndOffset();
+        int first = firstCRLFAtOrAfter(start);
+        if (first == cRLFLocations.length || cRLFLocations[first] >= end) {
+            return fileText.subSequence(start, end).toString();
+        }
+        StringBuilder sb = new StringBuilder(end - start + 16);
+        appendSourceText(sb, start, end, first);
         return sb.toString();
     }
 
-    // replace `\n` to CRLF back if it's CRLF in the source
-    private String replaceCRLF(PsiWhiteSpace wp) {
-        String text = wp.getText();
-        TextRange range = wp.getTextRange();
-        int left = findFirstGreaterOrEqual(cRLFLocations, range.getStartOffset());
-        int right = left != -1 ? findFirstLessOrEqual(cRLFLocations, range.getEndOffset(), left) : -1;
-        boolean hasCRLF = left != -1 && left <= right;
-
-        if (hasCRLF) {
-            for (int i = right; i >= left; i--) {
-                text = replaceNewLineWithCRLF(text, cRLFLocations.get(i) - range.getStartOffset());
+    /**
+     * Copies a range of the source text to the builder in one pass, inserting a `\r` before every `\n` that was
+     * a CRLF in the source.
+     */
+    private void appendSourceText(StringBuilder sb, int start, int end, int firstCRLF) {
+        int copied = start;
+        for (int i = firstCRLF; i < cRLFLocations.length; i++) {
+            int offset = cRLFLocations[i];
+            if (offset >= end) {
+                break;
+            }
+            if (fileText.charAt(offset) == '\n') {
+                sb.append(fileText, copied, offset).append('\r');
+                copied = offset;
             }
         }
-        return text;
+        sb.append(fileText, copied, end);
     }
 
+    /**
+     * @return The index of the first CRLF location at or after the offset, or the number of locations if there is none.
+     */
+    private int firstCRLFAtOrAfter(int offset) {
+        int left = 0;
+        int right = cRLFLocations.length;
+        while (left < right) {
+            int mid = (left + right) >>> 1;
+            if (cRLFLocations[mid] < offset) {
+                left = mid + 1;
+            } else {
+                right = mid;
+            }
+        }
+        return left;
+    }
+
+    /**
+     * The same as merging the {@link #toSpace(PsiElement)} of each space sibling from {@code node} on, but the
+     * whitespace between comments is collected in place rather than by concatenating intermediate spaces.
+     */
     private Space space(@Nullable PsiElement node) {
-        Space space = Space.EMPTY;
-        while (node != null) {
-            if (isSpace(node.getNode())) {
-                space = merge(space, toSpace(node));
+        StringBuilder whitespace = new StringBuilder();
+        String leading = null;
+        List<Comment> comments = null;
+        for (; node != null && isSpace(node.getNode()); node = node.getNextSibling()) {
+            IElementType elementType = node.getNode().getElementType();
+            if (elementType == KtTokens.WHITE_SPACE) {
+                appendWhitespace(whitespace, node);
+                continue;
+            }
+            List<Comment> nodeComments = toSpace(node).getComments();
+            if (nodeComments.isEmpty()) {
+                continue;
+            }
+            if (comments == null) {
+                leading = whitespace.toString();
+                comments = new ArrayList<>(nodeComments.size());
             } else {
-                break;
+                setLastSuffix(comments, whitespace.toString());
             }
-            node = node.getNextSibling();
+            whitespace.setLength(0);
+            comments.addAll(nodeComments);
+        }
+        if (comments == null) {
+            return Space.build(whitespace.toString(), emptyList());
         }
-        return space;
+        setLastSuffix(comments, whitespace.toString());
+        return Space.build(leading, comments);
+    }
+
+    private static void setLastSuffix(List<Comment> comments, String suffix) {
+        int last = comments.size() - 1;
+        comments.set(last, comments.get(last).withSuffix(suffix));
     }
 
     public static Space merge(@Nullable Space s1, @Nullable Space s2) {
@@ -4414,61 +4491,6 @@ public class KotlinTreeParserVisitor extends KtVisitor<J, ExecutionContext> {
         return null;
     }
 
-    private int findFirstGreaterOrEqual(List<Integer> sequence, int target) {
-        int left = 0;
-        int right = sequence.size() - 1;
-        int resultIndex = -1;
-
-        while (left <= right) {
-            int mid = left + (right - left) / 2;
-            int midValue = sequence.get(mid);
-
-            if (midValue >= target) {
-                resultIndex = mid;
-                right = mid - 1;
-            } else {
-                left = mid + 1;
-            }
-        }
-
-        return resultIndex;
-    }
-
-    private int findFirstLessOrEqual(List<Integer> sequence, int target, int left) {
-        int right = sequence.size() - 1;
-        int resultIndex = -1;
-
-        while (left <= right) {
-            int mid = left + (right - left) / 2;
-            int midValue = sequence.get(mid);
-
-            if (midValue <= target) {
-                resultIndex = mid;
-                left = mid + 1;
-            } else {
-                right = mid - 1;
-            }
-        }
-
-        return resultIndex;
-    }
-
-    private String replaceNewLineWithCRLF(String source, int index) {
-        if (index < 0 || index >= source.length()) {
-            return source;
-        }
-
-        StringBuilder sb = new StringBuilder(source);
-        char charAtIndex = source.charAt(index);
-        if (charAtIndex != '\n') {
-            return source;
-        }
-
-        sb.setCharAt(index, '\r');
-        sb.insert(index + 1, '\n');
-
-        return sb.toString();
-    }
 
     private static @Nullable ASTNode getNodeOrNull(@Nullable PsiElement psiElement) {
         return psiElement != null ? psiElement.getNode() : null;
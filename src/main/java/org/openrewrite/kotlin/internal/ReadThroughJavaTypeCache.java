@@ -0,0 +1,42 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.kotlin.internal;
+
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.java.internal.JavaTypeCache;
+
+/**
+ * A type cache that answers lookups from its own types first and then from a shared cache, but keeps the types
+ * put into it to itself.
+ * <p>
+ * A parser with a bounded library type depth builds library classes without members, and classes whose members
+ * refer to them. Writing those into the configured cache would hand incomplete types to other parsers sharing it,
+ * which map library types fully and have no way to tell. Reading through still lets such a parser reuse the complete
+ * types of the shared cache.
+ */
+public class ReadThroughJavaTypeCache extends JavaTypeCache {
+    private final JavaTypeCache shared;
+
+    public ReadThroughJavaTypeCache(JavaTypeCache shared) {
+        this.shared = shared;
+    }
+
+    @Override
+    public <T> @Nullable T get(String signature) {
+        T type = super.get(signature);
+        return type == null ? shared.get(signature) : type;
+    }
+}
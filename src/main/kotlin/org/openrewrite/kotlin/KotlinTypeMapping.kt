@@ -63,41 +63,94 @@ import org.openrewrite.java.tree.TypeUtils
 import org.openrewrite.kotlin.KotlinTypeSignatureBuilder.Companion.convertClassIdToFqn
 import org.openrewrite.kotlin.KotlinTypeSignatureBuilder.Companion.methodName
 import org.openrewrite.kotlin.KotlinTypeSignatureBuilder.Companion.variableName
+import org.openrewrite.kotlin.internal.ClassIdSymbolCache
+import java.util.Collections
+import java.util.IdentityHashMap
 import kotlin.collections.ArrayList
 
+/**
+ * @param libraryTypeDepth How many library classes deep the members of library classes are mapped, or a negative
+ * value to map all of them. Library classes beyond the depth are mapped with their name and kind only, and are
+ * completed in place once a lookup reaches them within the depth, for example from a source that calls them.
+ * A type cache used with a bounded depth must not be shared with type mappings that map all library members.
+ * @param symbolCache Shared by the type mappings of all sources of the session, and by their signature builders.
+ * @param shallowClasses The library classes that were mapped beyond the depth and not completed yet, shared by
+ * all type mappings that share the type cache.
+ */
 @Suppress("DuplicatedCode")
-class KotlinTypeMapping(
+class KotlinTypeMapping @JvmOverloads constructor(
     private val typeCache: JavaTypeCache,
     val firSession: FirSession,
-    private val firFile: FirFile
+    private val firFile: FirFile,
+    private val libraryTypeDepth: Int = -1,
+    val symbolCache: ClassIdSymbolCache = ClassIdSymbolCache(firSession),
+    private val shallowClasses: MutableSet<Class> = Collections.newSetFromMap(IdentityHashMap())
 ) : JavaTypeMapping<Any> {
 
-    private val signatureBuilder: KotlinTypeSignatureBuilder = KotlinTypeSignatureBuilder(firSession, firFile)
+    private val signatureBuilder: KotlinTypeSignatureBuilder = KotlinTypeSignatureBuilder(firSession, firFile, symbolCache)
+
+    /**
+     * Guards the construction of types in the type cache, which is shared by all type mappings that share the cache.
+     * It is held for the whole construction of a type, so each type is built once. A thread that holds it acquires the
+     * [firLock] after it, never before.
+     */
+    val lock: Any
+        get() = typeCache
+
+    /**
+     * Guards the lazily deserialized FIR of the library session, whose symbol providers are not thread-safe. It is shared
+     * by the type mappings of one session only, so sessions that share a type cache compute signatures concurrently.
+     * Signatures are computed while holding this lock alone, and a type is only built while also holding the [lock].
+     */
+    val firLock: Any
+        get() = symbolCache
+
+    /**
+     * The types already mapped for a FIR element of this file, so that an element reached from several PSI elements
+     * is looked up by identity instead of rebuilding its signature. A type mapping is confined to the thread that
+     * converts its file, so the memo is read without the lock.
+     */
+    private val memo: MutableMap<MemoKey, JavaType> = HashMap()
+
+    /**
+     * The shallow classes of imports that do not resolve, kept out of the type cache.
+     */
+    private val unresolvedClasses: MutableMap<String, ShallowClass> = HashMap()
+
+    /**
+     * The number of library classes whose members are being mapped further up the stack.
+     */
+    private var libraryNesting = 0
+
+    /**
+     * The number of lookups answered by the per-file memo.
+     */
+    var memoHits: Long = 0
+        private set
+
+    /**
+     * The number of lookups that had to compute a signature.
+     */
+    var memoMisses: Long = 0
+        private set
 
     override fun type(type: Any?): JavaType {
         if (type == null || type is FirErrorTypeRef || type is FirExpression && type.typeRef is FirErrorTypeRef || type is FirResolvedQualifier && type.classId == null) {
             return Unknown.getInstance()
         }
 
-        val signature = signatureBuilder.signature(type)
-        val existing: JavaType? = typeCache.get(signature)
-        if (existing != null) {
-            return existing
-        }
-
-        return type(type, firFile, signature) ?: Unknown.getInstance()
+        return memoized(MemoKind.TYPE, type, null, { signatureBuilder.signature(type) }) { signature ->
+            type(type, firFile, signature)
+        } ?: Unknown.getInstance()
     }
 
     fun type(type: Any?, parent: Any?): JavaType? {
         if (type == null || type is FirErrorTypeRef || type is FirExpression && type.typeRef is FirErrorTypeRef || type is FirResolvedQualifier && type.classId == null) {
             return Unknown.getInstance()
         }
-        val signature = signatureBuilder.signature(type, parent)
-        val existing = typeCache.get<JavaType>(signature)
-        if (existing != null) {
-            return existing
+        return memoized(MemoKind.TYPE_WITH_PARENT, type, parent, { signatureBuilder.signature(type, parent) }) { signature ->
+            type(type, parent, signature)
         }
-        return type(type, parent, signature)
     }
 
     @OptIn(SymbolInternals::class)
@@ -105,13 +158,9 @@ class KotlinTypeMapping(
         if (classId == null) {
             return Unknown.getInstance()
         }
-        val fir = classId.toSymbol(firSession)?.fir
-        val signature = signatureBuilder.signature(fir, parent)
-        val existing = typeCache.get<JavaType>(signature)
-        if (existing != null) {
-            return existing
-        }
-        return type(fir, parent, signature)
+        val fir = synchronized(firLock) { symbolCache.toSymbol(classId)?.fir }
+        val signature = synchronized(firLock) { signatureBuilder.signature(fir, parent) }
+        return cachedOrBuilt(signature) { type(fir, parent, it) }
     }
 
     @OptIn(SymbolInternals::class)
@@ -224,8 +273,9 @@ class KotlinTypeMapping(
             return null
         }
 
-        // If the symbol is not resolvable we return a NEW ShallowClass to prevent caching on a potentially resolvable class type.
-        val sym = type.importedFqName!!.topLevelClassAsmType().classId.toSymbol(firSession) ?: return ShallowClass.build(signature)
+        // If the symbol is not resolvable we return a ShallowClass of this file only to prevent caching on a potentially resolvable class type.
+        val sym = symbolCache.toSymbol(type.importedFqName!!.topLevelClassAsmType().classId)
+            ?: return unresolvedClasses.getOrPut(signature) { ShallowClass.build(signature) }
         return type(sym.fir, signature)
     }
 
@@ -352,129 +402,38 @@ class KotlinTypeMapping(
             else -> throw UnsupportedOperationException("Unexpected classType: ${type.javaClass}")
         }
         var clazz: Class? = (if (fq is Parameterized) fq.type else fq) as Class?
-        if (clazz == null) {
-            clazz = Class(
-                null,
-                mapToFlagsBitmap(firClass.visibility, firClass.modality(), firClass.isStatic),
-                fqn,
-                mapKind(firClass.classKind),
-                null, null, null, null, null, null, null
-            )
-
-            typeCache.put(fqn, clazz)
-
-            var superTypeRef: FirTypeRef? = null
-            var interfaceTypeRefs: MutableList<FirTypeRef>? = null
-            for (t in firClass.superTypeRefs) {
-                val sym = t.coneType.toRegularClassSymbol(firSession)
-                when (sym?.fir?.classKind) {
-                    ClassKind.CLASS -> superTypeRef = t
-                    ClassKind.INTERFACE -> {
-                        if (interfaceTypeRefs == null) {
-                            interfaceTypeRefs = ArrayList()
-                        }
-                        interfaceTypeRefs.add(t)
-                    }
-
-                    else -> {}
-                }
-            }
-            val supertype =
-                if (superTypeRef == null || "java.lang.Object" == signature) null else TypeUtils.asFullyQualified(
-                    type(superTypeRef)
+        val shallow = clazz != null && libraryTypeDepth >= 0 && shallowClasses.contains(clazz)
+        if (clazz == null || shallow && libraryNesting < libraryTypeDepth) {
+            if (clazz == null) {
+                clazz = Class(
+                    null,
+                    mapToFlagsBitmap(firClass.visibility, firClass.modality(), firClass.isStatic),
+                    fqn,
+                    mapKind(firClass.classKind),
+                    null, null, null, null, null, null, null
                 )
-            var declaringType: FullyQualified? = null
-            if (!firClass.isLocal && firClass.symbol.classId.isNestedClass) {
-                val parentSymbol = firClass.symbol.classId.outerClassId!!.toSymbol(firSession)
-                if (parentSymbol != null) {
-                    declaringType = TypeUtils.asFullyQualified(type(parentSymbol.fir))
-                }
-            } else if (firClass.symbol.classId.isNestedClass) {
-                declaringType = TypeUtils.asFullyQualified(type(parent))
-            }
-            val properties: MutableList<FirProperty> = ArrayList(firClass.declarations.size)
-            val javaFields: MutableList<FirJavaField> = ArrayList(firClass.declarations.size)
-            val functions: MutableList<FirFunction> = ArrayList(firClass.declarations.size)
-            val enumEntries: MutableList<FirEnumEntry> = ArrayList(firClass.declarations.size)
-            for (declaration: FirDeclaration in firClass.declarations) {
-                if (declaration is FirProperty) {
-                    if (declaration.source == null || declaration.source!!.kind !is KtFakeSourceElementKind) {
-                        properties.add(declaration)
-                    }
-                } else if (declaration is FirJavaField) {
-                    javaFields.add(declaration)
-                } else if (declaration is FirSimpleFunction) {
-                    functions.add(declaration as FirFunction)
-                } else if (declaration is FirConstructor) {
-                    functions.add(declaration as FirFunction)
-                } else if (declaration is FirEnumEntry) {
-                    enumEntries.add(declaration)
-                } else if (declaration is FirAnonymousInitializer) {
-                    // TODO: MethodInvocationTest#anonymousLambdaInSuperConstructorCall
-                } else if (declaration is FirField) {
-                    // TODO: ClassDeclarationTest#explicitDelegation
-                } else if (declaration !is FirRegularClass) {
-                    throw UnsupportedOperationException("Unsupported FirDeclaration: ${declaration.javaClass.name}")
-                }
-            }
 
-            var fields: MutableList<Variable>? = null
-            if (enumEntries.isNotEmpty()) {
-                fields = ArrayList(properties.size + enumEntries.size)
-                for (enumEntry: FirEnumEntry in enumEntries) {
-                    fields.add(variableType(enumEntry, firClass))
-                }
+                typeCache.put(fqn, clazz)
             }
-            if (properties.isNotEmpty()) {
-                if (fields == null) {
-                    fields = ArrayList(properties.size)
-                }
-                for (property: FirProperty in properties) {
-                    fields.add(variableType(property, firClass))
-                }
-            }
-            if (javaFields.isNotEmpty()) {
-                if (fields == null) {
-                    fields = ArrayList(javaFields.size)
-                }
-                for (field: FirJavaField in javaFields) {
-                    fields.add(variableType(field, firClass))
+
+            val boundedLibrary = libraryTypeDepth >= 0 && !firClass.origin.fromSource
+            if (boundedLibrary && libraryNesting >= libraryTypeDepth) {
+                shallowClasses.add(clazz)
+            } else {
+                if (shallow) {
+                    shallowClasses.remove(clazz)
                 }
-            }
-            var methods: MutableList<Method>? = null
-            if (functions.isNotEmpty()) {
-                methods = ArrayList(functions.size)
-                for (function: FirFunction in functions) {
-                    val mt = methodDeclarationType(function, firClass)
-                    methods.add(mt)
+                if (boundedLibrary) {
+                    libraryNesting++
                 }
-            }
-            var interfaces: MutableList<FullyQualified>? = null
-            if (!interfaceTypeRefs.isNullOrEmpty()) {
-                interfaces = ArrayList(interfaceTypeRefs.size)
-                for (iParam: FirTypeRef? in interfaceTypeRefs) {
-                    val javaType = TypeUtils.asFullyQualified(type(iParam))
-                    if (javaType != null) {
-                        interfaces.add(javaType)
+                try {
+                    completeClassType(clazz, firClass, parent, signature)
+                } finally {
+                    if (boundedLibrary) {
+                        libraryNesting--
                     }
                 }
             }
-            var typeParameters: MutableList<JavaType>? = null
-            if (firClass.typeParameters.isNotEmpty()) {
-                typeParameters = ArrayList(firClass.typeParameters.size)
-                for (tParam in firClass.typeParameters) {
-                    typeParameters.add(type(tParam))
-                }
-            }
-            clazz.unsafeSet(
-                typeParameters,
-                supertype,
-                declaringType,
-                listAnnotations(firClass.annotations),
-                interfaces,
-                fields,
-                methods
-            )
         }
 
         // The signature for a ConeClassLikeType may be aliases without type parameters.
@@ -497,15 +456,147 @@ class KotlinTypeMapping(
         return clazz
     }
 
+    /**
+     * Whether a cached type is a library class that was left shallow, and should now be completed.
+     */
+    private fun isShallowWithinDepth(type: JavaType): Boolean {
+        if (libraryTypeDepth < 0 || libraryNesting >= libraryTypeDepth) {
+            return false
+        }
+        val clazz = (if (type is Parameterized) type.type else type) as? Class ?: return false
+        return shallowClasses.contains(clazz)
+    }
+
+    /**
+     * Maps the supertypes, members and methods of a class, which is published to the type cache before its members are
+     * mapped, so that recursive references find it.
+     */
     @OptIn(SymbolInternals::class)
-    fun methodDeclarationType(enumEntry: FirEnumEntry): Method? {
-        val type = when (val fir = enumEntry.symbol.getContainingClassSymbol(firSession)?.fir) {
-            is FirClass -> {
-                when (val primary = fir.declarations.firstOrNull { it is FirPrimaryConstructor }) {
-                    is FirPrimaryConstructor -> type(primary as FirFunction)
-                    else -> null
+    private fun completeClassType(clazz: Class, firClass: FirClass, parent: Any?, signature: String) {
+        var superTypeRef: FirTypeRef? = null
+        var interfaceTypeRefs: MutableList<FirTypeRef>? = null
+        for (t in firClass.superTypeRefs) {
+            val sym = t.coneType.toRegularClassSymbol(firSession)
+            when (sym?.fir?.classKind) {
+                ClassKind.CLASS -> superTypeRef = t
+                ClassKind.INTERFACE -> {
+                    if (interfaceTypeRefs == null) {
+                        interfaceTypeRefs = ArrayList()
+                    }
+                    interfaceTypeRefs.add(t)
                 }
+
+                else -> {}
+            }
+        }
+        val supertype =
+            if (superTypeRef == null || "java.lang.Object" == signature) null else TypeUtils.asFullyQualified(
+                type(superTypeRef)
+            )
+        var declaringType: FullyQualified? = null
+        if (!firClass.isLocal && firClass.symbol.classId.isNestedClass) {
+            val parentSymbol = symbolCache.toSymbol(firClass.symbol.classId.outerClassId!!)
+            if (parentSymbol != null) {
+                declaringType = TypeUtils.asFullyQualified(type(parentSymbol.fir))
+            }
+        } else if (firClass.symbol.classId.isNestedClass) {
+            declaringType = TypeUtils.asFullyQualified(type(parent))
+        }
+        val properties: MutableList<FirProperty> = ArrayList(firClass.declarations.size)
+        val javaFields: MutableList<FirJavaField> = ArrayList(firClass.declarations.size)
+        val functions: MutableList<FirFunction> = ArrayList(firClass.declarations.size)
+        val enumEntries: MutableList<FirEnumEntry> = ArrayList(firClass.declarations.size)
+        for (declaration: FirDeclaration in firClass.declarations) {
+            if (declaration is FirProperty) {
+                if (declaration.source == null || declaration.source!!.kind !is KtFakeSourceElementKind) {
+                    properties.add(declaration)
+                }
+            } else if (declaration is FirJavaField) {
+                javaFields.add(declaration)
+            } else if (declaration is FirSimpleFunction) {
+                functions.add(declaration as FirFunction)
+            } else if (declaration is FirConstructor) {
+                functions.add(declaration as FirFunction)
+            } else if (declaration is FirEnumEntry) {
+                enumEntries.add(declaration)
+            } else if (declaration is FirAnonymousInitializer) {
+                // TODO: MethodInvocationTest#anonymousLambdaInSuperConstructorCall
+            } else if (declaration is FirField) {
+                // TODO: ClassDeclarationTest#explicitDelegation
+            } else if (declaration !is FirRegularClass) {
+                throw UnsupportedOperationException("Unsupported FirDeclaration: ${declaration.javaClass.name}")
+            }
+        }
+
+        var fields: MutableList<Variable>? = null
+        if (enumEntries.isNotEmpty()) {
+            fields = ArrayList(properties.size + enumEntries.size)
+            for (enumEntry: FirEnumEntry in enumEntries) {
+                fields.add(variableType(enumEntry, firClass))
+            }
+        }
+        if (properties.isNotEmpty()) {
+            if (fields == null) {
+                fields = ArrayList(properties.size)
+            }
+            for (property: FirProperty in properties) {
+                fields.add(variableType(property, firClass))
+            }
+        }
+        if (javaFields.isNotEmpty()) {
+            if (fields == null) {
+                fields = ArrayList(javaFields.size)
+            }
+            for (field: FirJavaField in javaFields) {
+                fields.add(variableType(field, firClass))
+            }
+        }
+        var methods: MutableList<Method>? = null
+        if (functions.isNotEmpty()) {
+            methods = ArrayList(functions.size)
+            for (function: FirFunction in functions) {
+                val mt = methodDeclarationType(function, firClass)
+                methods.add(mt)
+            }
+        }
+        var interfaces: MutableList<FullyQualified>? = null
+        if (!interfaceTypeRefs.isNullOrEmpty()) {
+            interfaces = ArrayList(interfaceTypeRefs.size)
+            for (iParam: FirTypeRef? in interfaceTypeRefs) {
+                val javaType = TypeUtils.asFullyQualified(type(iParam))
+                if (javaType != null) {
+                    interfaces.add(javaType)
+                }
+            }
+        }
+        var typeParameters: MutableList<JavaType>? = null
+        if (firClass.typeParameters.isNotEmpty()) {
+            typeParameters = ArrayList(firClass.typeParameters.size)
+            for (tParam in firClass.typeParameters) {
+                typeParameters.add(type(tParam))
+            }
+        }
+        clazz.unsafeSet(
+            typeParameters,
+            supertype,
+            declaringType,
+            listAnnotations(firClass.annotations),
+            interfaces,
+            fields,
+            methods
+        )
+    }
+
+    @OptIn(SymbolInternals::class)
+    fun methodDeclarationType(enumEntry: FirEnumEntry): Method? {
+        val primary = synchronized(firLock) {
+            when (val fir = enumEntry.symbol.getContainingClassSymbol(firSession)?.fir) {
+                is FirClass -> fir.declarations.firstOrNull { it is FirPrimaryConstructor }
+                else -> null
             }
+        }
+        val type = when (primary) {
+            is FirPrimaryConstructor -> type(primary as FirFunction)
             else -> null
         }
         return when (type) {
@@ -515,12 +606,9 @@ class KotlinTypeMapping(
     }
 
     fun methodDeclarationType(function: FirFunction, parent: Any?): Method {
-        val signature = signatureBuilder.methodSignature(function, parent)
-        val existing = typeCache.get<Method>(signature)
-        if (existing != null) {
-            return existing
-        }
-        return methodDeclarationType(function, parent, signature)
+        return memoized(MemoKind.METHOD_DECLARATION, function, parent, { signatureBuilder.methodSignature(function, parent) }) { signature ->
+            methodDeclarationType(function, parent, signature)
+        }!!
     }
 
     @OptIn(SymbolInternals::class)
@@ -669,12 +757,9 @@ class KotlinTypeMapping(
         if (fir.typeRef is FirErrorTypeRef) {
             return null
         }
-        val signature = signatureBuilder.methodCallSignature(fir)
-        val existing = typeCache.get<Method>(signature)
-        if (existing != null) {
-            return existing
+        return memoized(MemoKind.METHOD_INVOCATION, fir, null, { signatureBuilder.methodCallSignature(fir) }) { signature ->
+            methodInvocationType(fir, signature)
         }
-        return methodInvocationType(fir, signature)
     }
 
     @OptIn(SymbolInternals::class)
@@ -862,12 +947,76 @@ class KotlinTypeMapping(
     }
 
     fun variableType(variable: FirVariable, parent: Any?): Variable {
-        val signature = signatureBuilder.variableSignature(variable, parent)
-        val existing = typeCache.get<Variable>(signature)
+        return memoized(MemoKind.VARIABLE, variable, parent, { signatureBuilder.variableSignature(variable, parent) }) { signature ->
+            variableType(variable, parent, signature)
+        }!!
+    }
+
+    /**
+     * Answers from the memo without any lock, and otherwise computes the signature with the [firLock] held and looks it up
+     * in the type cache. Like the type cache, the memo may return a type that is still being built further up the same stack.
+     */
+    private inline fun <T : JavaType> memoized(
+        kind: MemoKind,
+        element: Any,
+        parent: Any?,
+        signature: () -> String,
+        build: (String) -> T?
+    ): T? {
+        val key = MemoKey(kind, element, parent)
+        @Suppress("UNCHECKED_CAST")
+        val existing = memo[key] as T?
         if (existing != null) {
+            memoHits++
             return existing
         }
-        return variableType(variable, parent, signature)
+        memoMisses++
+        val computed = cachedOrBuilt(synchronized(firLock) { signature() }, build) ?: return null
+        // Lookups made while mapping library members may return shallow classes, which a later lookup from
+        // within the library type depth has to complete
+        if (libraryNesting == 0) {
+            memo[key] = computed
+        }
+        return computed
+    }
+
+    /**
+     * Looks a type up without the [lock] if the cache only shows complete types to other threads, or this thread is
+     * building types already. Otherwise, or if the type is missing, builds it with the [lock] and the [firLock] held.
+     */
+    private inline fun <T : JavaType> cachedOrBuilt(signature: String, build: (String) -> T?): T? {
+        if (typeCache is ConcurrentJavaTypeCache || Thread.holdsLock(lock)) {
+            cached<T>(signature)?.let { return it }
+        }
+        synchronized(lock) {
+            val concurrentTypeCache = typeCache as? ConcurrentJavaTypeCache
+            concurrentTypeCache?.beginConstruction()
+            try {
+                return cached(signature) ?: synchronized(firLock) { build(signature) }
+            } finally {
+                concurrentTypeCache?.endConstruction()
+            }
+        }
+    }
+
+    private fun <T : JavaType> cached(signature: String): T? {
+        val existing = typeCache.get<T>(signature)
+        return if (existing == null || isShallowWithinDepth(existing)) null else existing
+    }
+
+    private enum class MemoKind {
+        TYPE, TYPE_WITH_PARENT, METHOD_DECLARATION, METHOD_INVOCATION, VARIABLE
+    }
+
+    /**
+     * Compares the element and parent by identity.
+     */
+    private class MemoKey(val kind: MemoKind, val element: Any, val parent: Any?) {
+        override fun equals(other: Any?): Boolean =
+            other is MemoKey && kind == other.kind && element === other.element && parent === other.parent
+
+        override fun hashCode(): Int =
+            (kind.ordinal * 31 + System.identityHashCode(element)) * 31 + System.identityHashCode(parent)
     }
 
     @OptIn(SymbolInternals::class)
@@ -918,7 +1067,7 @@ class KotlinTypeMapping(
             is JavaArrayType -> javaArrayType(type, signature)
             is JavaPrimitiveType -> javaPrimitiveType(type)
             is JavaClassifierType -> javaClassType(type, signature)
-            is BinaryJavaAnnotation -> type(type.classId.toSymbol(firSession)?.fir, signature)
+            is BinaryJavaAnnotation -> type(symbolCache.toSymbol(type.classId)?.fir, signature)
             is BinaryJavaClass -> javaClassType(type, signature)
             is BinaryJavaTypeParameter -> javaTypeParameter(type, signature)
             is JavaWildcardType -> javaWildCardType(type, signature)
@@ -1238,7 +1387,7 @@ class KotlinTypeMapping(
     private fun listAnnotations(javaAnnotations: Collection<JavaAnnotation>): List<FullyQualified>? {
         var annotations: MutableList<FullyQualified>? = null
         for (javaAnnotation: JavaAnnotation in javaAnnotations) {
-            val fir = javaAnnotation.classId?.toSymbol(firSession)?.fir
+            val fir = javaAnnotation.classId?.let { symbolCache.toSymbol(it) }?.fir
             if (fir != null && isNotSourceRetention(fir.annotations)) {
                 if (annotations == null) {
                     annotations = ArrayList()
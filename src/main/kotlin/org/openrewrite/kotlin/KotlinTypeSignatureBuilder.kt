@@ -26,7 +26,6 @@ import org.jetbrains.kotlin.fir.references.FirSuperReference
 import org.jetbrains.kotlin.fir.references.toResolvedBaseSymbol
 import org.jetbrains.kotlin.fir.resolve.calls.FirSyntheticFunctionSymbol
 import org.jetbrains.kotlin.fir.resolve.inference.ConeTypeParameterBasedTypeVariable
-import org.jetbrains.kotlin.fir.resolve.providers.toSymbol
 import org.jetbrains.kotlin.fir.resolve.toFirRegularClass
 import org.jetbrains.kotlin.fir.symbols.SymbolInternals
 import org.jetbrains.kotlin.fir.symbols.impl.*
@@ -40,18 +39,36 @@ import org.jetbrains.kotlin.load.java.structure.impl.classFiles.BinaryJavaTypePa
 import org.jetbrains.kotlin.load.kotlin.JvmPackagePartSource
 import org.jetbrains.kotlin.name.ClassId
 import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.name.Name
 import org.jetbrains.kotlin.resolve.jvm.JvmClassName
 import org.jetbrains.kotlin.types.Variance
 import org.openrewrite.java.JavaTypeSignatureBuilder
 import org.openrewrite.java.tree.JavaType
+import org.openrewrite.kotlin.internal.ClassIdSymbolCache
 import java.util.*
 import kotlin.collections.HashMap
 
+/**
+ * @param symbolCache The symbol cache of the [KotlinTypeMapping] that builds the signatures, and through it of all
+ * sources of the session. A builder used on its own gets a cache of its own.
+ */
 @Suppress("DuplicatedCode")
-class KotlinTypeSignatureBuilder(private val firSession: FirSession, private val firFile: FirFile) :
-    JavaTypeSignatureBuilder {
+class KotlinTypeSignatureBuilder @JvmOverloads constructor(
+    private val firSession: FirSession,
+    private val firFile: FirFile,
+    private val symbolCache: ClassIdSymbolCache = ClassIdSymbolCache(firSession)
+) : JavaTypeSignatureBuilder {
     private var typeVariableNameStack: MutableSet<String>? = null
 
+    /**
+     * Cone types are shared between the FIR elements that refer to them, so the signatures of parameterized
+     * types are memoized by identity. Only signatures built outside a type parameter are memoized, since
+     * recursive type parameters are abbreviated depending on the type parameters being visited.
+     */
+    private val coneSignatures: MutableMap<ConeClassLikeType, String> = IdentityHashMap()
+
+    private val classFqns: MutableMap<ClassId, String> = HashMap()
+
     override fun signature(type: Any?): String {
         return signature(type, firFile)
     }
@@ -60,7 +77,7 @@ class KotlinTypeSignatureBuilder(private val firSession: FirSession, private val
     fun signature(type: Any?, parent: Any?): String {
         return when (type) {
             is ConeClassLikeType -> {
-                if (type.typeArguments.isNotEmpty()) parameterizedSignature(type) else classSignature(type)
+                coneClassLikeSignature(type)
             }
 
             is ConeFlexibleType -> {
@@ -191,6 +208,23 @@ class KotlinTypeSignatureBuilder(private val firSession: FirSession, private val
         }
     }
 
+    private fun coneClassLikeSignature(type: ConeClassLikeType): String {
+        if (type.typeArguments.isEmpty()) {
+            return classSignature(type)
+        }
+        if (!typeVariableNameStack.isNullOrEmpty()) {
+            return parameterizedSignature(type)
+        }
+        return coneSignatures.getOrPut(type) { parameterizedSignature(type) }
+    }
+
+    private fun classFqn(classId: ClassId?): String {
+        if (classId == null) {
+            return convertClassIdToFqn(null)
+        }
+        return classFqns.getOrPut(classId) { convertClassIdToFqn(classId) }
+    }
+
     private fun anonymousClassSignature(type: FirAnonymousObject): String {
         val sig = StringBuilder(type.symbol.classId.asFqNameString())
         for (supertype in type.superTypeRefs) {
@@ -214,13 +248,13 @@ class KotlinTypeSignatureBuilder(private val firSession: FirSession, private val
 
     override fun classSignature(type: Any): String {
         return when (type) {
-            is ConeClassLikeType -> convertClassIdToFqn(type.classId)
-            is ConeFlexibleType -> convertClassIdToFqn(type.lowerBound.classId)
+            is ConeClassLikeType -> classFqn(type.classId)
+            is ConeFlexibleType -> classFqn(type.lowerBound.classId)
             is ConeTypeParameterType -> signature(type.type)
-            is FirClass -> convertClassIdToFqn(type.classId)
+            is FirClass -> classFqn(type.classId)
             is FirFile -> fileSignature(type)
             is FirResolvedTypeRef -> classSignature(type.type)
-            is FirResolvedQualifier -> convertClassIdToFqn(type.classId)
+            is FirResolvedQualifier -> classFqn(type.classId)
             else -> {
                 throw UnsupportedOperationException("Unsupported class type: ${type.javaClass.name}")
             }
@@ -283,31 +317,36 @@ class KotlinTypeSignatureBuilder(private val firSession: FirSession, private val
     }
 
     private fun parameterizedSignature(type: FirRegularClass): String {
-        val s = StringBuilder(classSignature(type))
-        val joiner = StringJoiner(", ", "<", ">")
-        for (tp in type.typeParameters) {
-            joiner.add(signature(tp, type))
+        val s = StringBuilder(classSignature(type)).append('<')
+        for ((i, tp) in type.typeParameters.withIndex()) {
+            if (i > 0) s.append(", ")
+            s.append(signature(tp, type))
         }
-        return s.append(joiner).toString()
+        return s.append('>').toString()
     }
 
     private fun parameterizedSignature(type: ConeClassLikeType): String {
-        val s = StringBuilder(classSignature(type))
-        val joiner = StringJoiner(", ", "<", ">")
-        for (tp in type.typeArguments) {
-            joiner.add(signature(tp, type.toFirResolvedTypeRef()))
+        val s = StringBuilder(classSignature(type)).append('<')
+        // The parent is only used for type parameters, so it is created once for all type arguments
+        var parent: FirResolvedTypeRef? = null
+        for ((i, tp) in type.typeArguments.withIndex()) {
+            if (i > 0) s.append(", ")
+            if (parent == null) {
+                parent = type.toFirResolvedTypeRef()
+            }
+            s.append(signature(tp, parent))
         }
-        return s.append(joiner).toString()
+        return s.append('>').toString()
     }
 
     @OptIn(SymbolInternals::class)
     fun parameterizedSignature(type: FirResolvedQualifier): String {
-        val s = StringBuilder(classSignature(type))
-        val joiner = StringJoiner(", ", "<", ">")
-        for (tp in type.typeArguments) {
-            joiner.add(signature(tp, type.symbol?.fir))
+        val s = StringBuilder(classSignature(type)).append('<')
+        for ((i, tp) in type.typeArguments.withIndex()) {
+            if (i > 0) s.append(", ")
+            s.append(signature(tp, type.symbol?.fir))
         }
-        return s.append(joiner).toString()
+        return s.append('>').toString()
     }
 
     override fun primitiveSignature(type: Any): String {
@@ -330,24 +369,30 @@ class KotlinTypeSignatureBuilder(private val firSession: FirSession, private val
             parent is FirClass -> classSignature(parent)
             else -> fileSignature(firFile)
         }
-        val sig = StringBuilder(clazz)
+        val sig = StringBuilder(clazz).append("{name=")
         when {
-            function.symbol is FirConstructorSymbol -> sig.append("{name=<constructor>,return=${signature(function.returnTypeRef)}")
-            else -> sig.append("{name=${methodName(function)},return=${signature(function.returnTypeRef)}")
+            function.symbol is FirConstructorSymbol -> sig.append("<constructor>")
+            else -> sig.append(methodName(function))
         }
-        sig.append(",parameters=${methodArgumentSignature(function)}}")
-        return sig.toString()
+        sig.append(",return=").append(signature(function.returnTypeRef))
+        sig.append(",parameters=")
+        methodArgumentSignature(function, sig)
+        return sig.append('}').toString()
     }
 
-    private fun methodArgumentSignature(function: FirFunction): String {
-        val genericArgumentTypes = StringJoiner(",", "[", "]")
+    private fun methodArgumentSignature(function: FirFunction, sig: StringBuilder) {
+        sig.append('[')
+        var first = true
         if (function.receiverParameter != null) {
-            genericArgumentTypes.add(signature(function.receiverParameter!!.typeRef))
+            sig.append(signature(function.receiverParameter!!.typeRef))
+            first = false
         }
         for (p in function.valueParameters) {
-            genericArgumentTypes.add(signature(p.returnTypeRef, function))
+            if (!first) sig.append(',')
+            sig.append(signature(p.returnTypeRef, function))
+            first = false
         }
-        return genericArgumentTypes.toString()
+        sig.append(']')
     }
 
     @OptIn(SymbolInternals::class)
@@ -389,55 +434,59 @@ class KotlinTypeSignatureBuilder(private val firSession: FirSession, private val
             declaringSig = signature(firFile)
         }
 
-        val sig = StringBuilder(declaringSig)
+        val sig = StringBuilder(declaringSig).append("{name=")
         when {
             sym is FirConstructorSymbol ||
-                    sym is FirSyntheticFunctionSymbol && sym.origin == FirDeclarationOrigin.SamConstructor -> sig.append("{name=<constructor>,return=${signature(function.typeRef)}")
-            sym is FirNamedFunctionSymbol -> {
-                sig.append("{name=${sym.name.asString()}")
-                sig.append(",return=${signature(function.typeRef)}")
-            }
-
+                    sym is FirSyntheticFunctionSymbol && sym.origin == FirDeclarationOrigin.SamConstructor -> sig.append("<constructor>")
+            sym is FirNamedFunctionSymbol -> sig.append(sym.name.asString())
             else -> throw UnsupportedOperationException("Unsupported function calleeReference: ${function.calleeReference.name}")
         }
-
-        sig.append(",parameters=${methodCallArgumentSignature(function)}}")
-        return sig.toString()
+        sig.append(",return=").append(signature(function.typeRef))
+        sig.append(",parameters=")
+        methodCallArgumentSignature(function, sig)
+        return sig.append('}').toString()
     }
 
     @OptIn(SymbolInternals::class)
-    private fun methodCallArgumentSignature(function: FirFunctionCall): String {
-        val genericArgumentTypes = StringJoiner(",", "[", "]")
-        if (function.toResolvedCallableSymbol()?.receiverParameter != null) {
-            genericArgumentTypes.add(signature(function.toResolvedCallableSymbol()?.receiverParameter!!.typeRef))
-        }
-        val mapNames = function.arguments.any { it is FirNamedArgumentExpression }
-        var args: MutableMap<String, FirNamedArgumentExpression>? = null
-        if (mapNames) {
-            for (a in function.arguments) {
-                if (args == null) {
-                    args = HashMap(function.arguments.size)
-                }
-                if (a is FirNamedArgumentExpression) {
-                    args[a.name.asString()] = a
-                }
-            }
+    private fun methodCallArgumentSignature(function: FirFunctionCall, sig: StringBuilder) {
+        sig.append('[')
+        var first = true
+        val callableSymbol = function.toResolvedCallableSymbol()
+        val receiverParameter = callableSymbol?.receiverParameter
+        if (receiverParameter != null) {
+            sig.append(signature(receiverParameter.typeRef))
+            first = false
         }
 
-        val valueParams = (function.toResolvedCallableSymbol()?.fir as FirFunction).valueParameters
+        val valueParams = (callableSymbol?.fir as FirFunction).valueParameters
         for ((index, p) in valueParams.withIndex()) {
-            val sig = signature(p.returnTypeRef, function)
-            if (sig.startsWith("Generic{")) {
-                if (mapNames && args != null && args.containsKey(p.name.asString())) {
-                    genericArgumentTypes.add(signature(args[p.name.asString()]!!.typeRef, function))
-                } else if (index < function.arguments.size) {
-                    genericArgumentTypes.add(signature((function.arguments[index]).typeRef, function))
+            val paramSig = signature(p.returnTypeRef, function)
+            val argSig = if (paramSig.startsWith("Generic{")) {
+                val named = namedArgument(function, p.name)
+                when {
+                    named != null -> signature(named.typeRef, function)
+                    index < function.arguments.size -> signature((function.arguments[index]).typeRef, function)
+                    else -> null
                 }
             } else {
-                genericArgumentTypes.add(sig)
+                paramSig
+            }
+            if (argSig != null) {
+                if (!first) sig.append(',')
+                sig.append(argSig)
+                first = false
             }
         }
-        return genericArgumentTypes.toString()
+        sig.append(']')
+    }
+
+    private fun namedArgument(function: FirFunctionCall, name: Name): FirNamedArgumentExpression? {
+        for (a in function.arguments) {
+            if (a is FirNamedArgumentExpression && a.name == name) {
+                return a
+            }
+        }
+        return null
     }
 
     private fun resolveImport(type: FirResolvedImport): String {
@@ -511,11 +560,11 @@ class KotlinTypeSignatureBuilder(private val firSession: FirSession, private val
             property.dispatchReceiverType is ConeClassLikeType && property.dispatchReceiverType!!.toRegularClassSymbol(
                 firSession
             ) != null -> {
-                convertClassIdToFqn(property.dispatchReceiverType!!.toRegularClassSymbol(firSession)!!.classId)
+                classFqn(property.dispatchReceiverType!!.toRegularClassSymbol(firSession)!!.classId)
             }
 
             property.symbol.callableId.classId != null -> {
-                var oSig = convertClassIdToFqn(property.symbol.callableId.classId)
+                var oSig = classFqn(property.symbol.callableId.classId)
                 if (oSig.contains("<")) {
                     oSig = oSig.substring(0, oSig.indexOf('<'))
                 }
@@ -528,8 +577,8 @@ class KotlinTypeSignatureBuilder(private val firSession: FirSession, private val
             else -> fileSignature(firFile)
         }
         sig.append(owner)
-        sig.append("{name=${variableName(property.name.asString())}")
-        sig.append(",type=${signature(property.returnTypeRef)}}")
+        sig.append("{name=").append(variableName(property.name.asString()))
+        sig.append(",type=").append(signature(property.returnTypeRef)).append('}')
         return sig.toString()
     }
 
@@ -543,7 +592,7 @@ class KotlinTypeSignatureBuilder(private val firSession: FirSession, private val
                 type.classifier
             )
 
-            is BinaryJavaAnnotation -> signature(type.classId.toSymbol(firSession)?.fir)
+            is BinaryJavaAnnotation -> signature(symbolCache.toSymbol(type.classId)?.fir)
             is BinaryJavaClass -> if (type.typeParameters.isNotEmpty()) javaParameterizedSignature(type) else javaClassSignature(
                 type
             )
@@ -686,11 +735,16 @@ class KotlinTypeSignatureBuilder(private val firSession: FirSession, private val
         }
 
         fun convertKotlinFqToJavaFq(kotlinFqn: String): String {
-            val cleanedFqn = kotlinFqn
-                .replace(".", "$")
-                .replace("/", ".")
-                .replace("?", "")
-            return if (cleanedFqn.startsWith(".")) cleanedFqn.substring(1) else cleanedFqn
+            val cleanedFqn = StringBuilder(kotlinFqn.length)
+            for (c in kotlinFqn) {
+                when (c) {
+                    '.' -> cleanedFqn.append('$')
+                    '/' -> cleanedFqn.append('.')
+                    '?' -> {}
+                    else -> cleanedFqn.append(c)
+                }
+            }
+            return if (cleanedFqn.startsWith(".")) cleanedFqn.substring(1) else cleanedFqn.toString()
         }
 
         fun methodName(function: FirFunction): String {
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.kotlin.internal
+
+import org.jetbrains.kotlin.fir.FirSession
+import org.jetbrains.kotlin.fir.resolve.providers.toSymbol
+import org.jetbrains.kotlin.fir.symbols.impl.FirClassifierSymbol
+import org.jetbrains.kotlin.name.ClassId
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Caches the symbols the FIR symbol providers resolve for a class id, including class ids that do not resolve.
+ * The symbol providers of a session do not change once it is resolved, so one cache serves all sources of a session.
+ */
+class ClassIdSymbolCache(val firSession: FirSession) {
+    private val symbols: MutableMap<ClassId, Any> = ConcurrentHashMap()
+    private val hits = LongAdder()
+    private val misses = LongAdder()
+
+    fun toSymbol(classId: ClassId): FirClassifierSymbol<*>? {
+        val cached = symbols[classId]
+        if (cached != null) {
+            hits.increment()
+            return if (cached === NO_SYMBOL) null else cached as FirClassifierSymbol<*>
+        }
+        misses.increment()
+        val symbol = classId.toSymbol(firSession)
+        symbols[classId] = symbol ?: NO_SYMBOL
+        return symbol
+    }
+
+    val hitCount: Long
+        get() = hits.sum()
+
+    val missCount: Long
+        get() = misses.sum()
+
+    /**
+     * The share of lookups that did not reach the symbol providers.
+     */
+    val hitRate: Double
+        get() {
+            val hitCount = hitCount
+            val total = hitCount + missCount
+            return if (total == 0L) 0.0 else hitCount.toDouble() / total
+        }
+
+    companion object {
+        private val NO_SYMBOL = Any()
+    }
+}
@@ -24,40 +24,78 @@ import org.jetbrains.kotlin.ir.declarations.IrFile
 import org.jetbrains.kotlin.psi.KtElement
 import org.jetbrains.kotlin.psi.KtFile
 import org.openrewrite.Parser
-import java.util.*
+import java.nio.charset.Charset
 import kotlin.collections.ArrayDeque
 
 @Getter
 class KotlinSource(
     var input: Parser.Input,
     val ktFile: KtFile,
-    val cRLFLocations : List<Int>
-) {
-    val nodes: Map<Int, ASTNode>
+    val cRLFLocations: IntArray,
+
+    /**
+     * The source text as it was read from the input, before line separators were normalized for the compiler.
+     */
+    val sourceText: String,
 
+    /**
+     * The encoding detected when the input was read, so that the input does not need to be opened again.
+     */
+    val charset: Charset,
+    val isCharsetBomMarked: Boolean
+) {
     @Setter
     var firFile: FirFile? = null
 
     @Setter
     var irFile: IrFile? = null
 
-    init {
-        nodes = map(ktFile)
+    /**
+     * Start offsets of the [KtElement]s in the file, in ascending order, and the outermost node starting at each offset.
+     * Only built when a node is looked up by offset.
+     */
+    private var offsets: IntArray? = null
+    private var offsetNodes: Array<ASTNode?>? = null
+
+    /**
+     * @return The outermost [KtElement] node that starts at the given offset, if any.
+     */
+    fun nodeAt(offset: Int): ASTNode? {
+        if (offsets == null) {
+            index()
+        }
+        val i = offsets!!.binarySearch(offset)
+        return if (i >= 0) offsetNodes!![i] else null
     }
 
-    private fun map(ktFile: KtFile): Map<Int, ASTNode> {
-        val result: MutableMap<Int, ASTNode> = HashMap()
+    private fun index() {
+        var size = 0
+        var keys = IntArray(256)
+        var values = arrayOfNulls<ASTNode>(256)
+        // A pre-order traversal visits the elements in ascending order of their start offsets
         val stack = ArrayDeque<PsiElement>()
         stack.addFirst(ktFile)
         while (stack.isNotEmpty()) {
             val curr = stack.removeFirst()
-            if (curr is KtElement)
-                result[curr.textRange.startOffset] = curr.node
-            if (curr.firstChild != null)
-                stack.addFirst(curr.firstChild)
-            if (curr.nextSibling != null)
-                stack.addFirst(curr.nextSibling)
+            if (curr is KtElement) {
+                val offset = curr.textRange.startOffset
+                if (size == 0 || keys[size - 1] != offset) {
+                    if (size == keys.size) {
+                        keys = keys.copyOf(size * 2)
+                        values = values.copyOf(size * 2)
+                    }
+                    keys[size] = offset
+                    values[size] = curr.node
+                    size++
+                }
+            }
+            var child = curr.lastChild
+            while (child != null) {
+                stack.addFirst(child)
+                child = child.prevSibling
+            }
         }
-        return result
+        offsets = keys.copyOf(size)
+        offsetNodes = values.copyOf(size)
     }
 }
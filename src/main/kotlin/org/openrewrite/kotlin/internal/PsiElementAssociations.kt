@@ -32,7 +32,6 @@ import org.jetbrains.kotlin.fir.references.FirErrorNamedReference
 import org.jetbrains.kotlin.fir.references.FirResolvedNamedReference
 import org.jetbrains.kotlin.fir.references.resolved
 import org.jetbrains.kotlin.fir.resolve.calls.FirSyntheticFunctionSymbol
-import org.jetbrains.kotlin.fir.resolve.providers.toSymbol
 import org.jetbrains.kotlin.fir.symbols.SymbolInternals
 import org.jetbrains.kotlin.fir.symbols.impl.*
 import org.jetbrains.kotlin.fir.types.*
@@ -42,111 +41,221 @@ import org.jetbrains.kotlin.psi
 import org.jetbrains.kotlin.psi.*
 import org.openrewrite.java.tree.JavaType
 import org.openrewrite.kotlin.KotlinTypeMapping
+import java.util.IdentityHashMap
 
 class PsiElementAssociations(val typeMapping: KotlinTypeMapping, val file: FirFile) {
 
-    private val elementMap: MutableMap<PsiElement, MutableList<FirInfo>> = HashMap()
-    private val typeMap: MutableMap<PsiElement, ConeTypeProjection> = HashMap()
-
-    @OptIn(SymbolInternals::class)
+    /**
+     * The FIR of the file level elements, like the file itself, its package directive, imports and file annotations.
+     */
+    private val fileIndex = FirIndex()
+    private val fileTypes: MutableMap<PsiElement, ConeTypeProjection> = HashMap()
+
+    /**
+     * The top level declarations of the file by their PSI, which are indexed on the first lookup of an element within them.
+     */
+    private val declarations: MutableMap<PsiElement, MutableList<FirDeclaration>> = IdentityHashMap()
+
+    /**
+     * The FIR of the one top level declaration that is currently indexed. The parser converts the declarations of a file
+     * one after the other, so the index of a declaration is released as soon as an element of the next one is looked up,
+     * and the index only ever holds the file level elements and a single declaration.
+     */
+    private val declarationIndex = FirIndex()
+    private val declarationTypes: MutableMap<PsiElement, ConeTypeProjection> = HashMap()
+
+    /**
+     * The PSI of the top level declaration that is currently indexed, if any.
+     */
+    var indexedDeclaration: PsiElement? = null
+        private set
+
+    private var collectingDeclarations = false
+    private var indexedTypes = fileTypes
+
+    private val enclosingTypeReferences: MutableMap<PsiElement, Any> = IdentityHashMap()
+
+    private var depth = 0
+
+    /**
+     * The FIR elements left to index, and the work left to do after indexing a subtree, so that deeply nested FIR,
+     * like long call chains or concatenations, is indexed with an explicit stack rather than by recursion.
+     */
+    private val pending = ArrayDeque<PendingIndex>()
+    private val children = ArrayList<FirElement>()
+
+    /**
+     * Indexes the file level elements. The top level declarations are only recorded, and indexed by [ensureIndexed].
+     */
     fun initialize() {
-        var depth = 0
-        object : FirDefaultVisitor<Unit, MutableMap<PsiElement, MutableList<FirInfo>>>() {
-            override fun visitElement(element: FirElement, data: MutableMap<PsiElement, MutableList<FirInfo>>) {
-                if (element.source != null && element.source.psi != null) {
-                    val psiElement = element.source!!.psi!!
-                    val firInfo = FirInfo(element, depth)
-                    data.computeIfAbsent(psiElement) { ArrayList() } += firInfo
+        collectingDeclarations = true
+        try {
+            index(file, 0, fileIndex, fileTypes)
+        } finally {
+            collectingDeclarations = false
+        }
+    }
+
+    /**
+     * Indexes the top level declaration that contains the element, unless it is already indexed, and releases the
+     * declaration that was indexed before. Looking up an element of a released declaration indexes it again.
+     */
+    private fun ensureIndexed(psi: PsiElement) {
+        if (declarations.isEmpty()) {
+            return
+        }
+        var p: PsiElement? = psi
+        while (p != null && p !is KtFile) {
+            if (p === indexedDeclaration) {
+                return
+            }
+            val declaration = declarations[p]
+            if (declaration != null) {
+                declarationIndex.clear()
+                declarationTypes.clear()
+                indexedDeclaration = p
+                for (fir in declaration) {
+                    index(fir, 1, declarationIndex, declarationTypes)
                 }
-                depth++
-                element.acceptChildren(this, data)
-                if (element is FirResolvedTypeRef) {
-                    // Do not visit FirUserTypeRef, since it's not mappable to a type.
-                    if (element.delegatedTypeRef != null && element.delegatedTypeRef !is FirUserTypeRef) {
-                        // not sure why this isn't taken care of by `FirResolvedTypeRefImpl#acceptChildren()`
-                        element.delegatedTypeRef?.accept(this, data)
-                    }
+                return
+            }
+            p = p.parent
+        }
+    }
+
+    private fun index(element: FirElement, depth: Int, elements: FirIndex, types: MutableMap<PsiElement, ConeTypeProjection>) {
+        indexedTypes = types
+        pending.addLast(PendingIndex(element, depth, null))
+        while (pending.isNotEmpty()) {
+            val next = pending.removeLast()
+            this.depth = next.depth
+            if (next.element != null) {
+                next.element.accept(indexer, elements)
+            } else {
+                next.action!!()
+            }
+        }
+    }
+
+    private class PendingIndex(val element: FirElement?, val depth: Int, val action: (() -> Unit)?)
+
+    private val childCollector = object : FirDefaultVisitor<Unit, MutableList<FirElement>>() {
+        override fun visitElement(element: FirElement, data: MutableList<FirElement>) {
+            data.add(element)
+        }
+    }
+
+    @OptIn(SymbolInternals::class)
+    private val indexer = object : FirDefaultVisitor<Unit, FirIndex>() {
+        override fun visitElement(element: FirElement, data: FirIndex) {
+            if (collectingDeclarations && depth == 1 && element is FirDeclaration && element.source is KtRealPsiSourceElement) {
+                declarations.getOrPut((element.source as KtRealPsiSourceElement).psi) { ArrayList(1) }.add(element)
+                return
+            }
+            if (element.source != null && element.source.psi != null) {
+                data.add(element.source!!.psi!!, element, depth)
+            }
+            // The children are pushed in reverse, so that they are indexed in order and before the delegated type reference
+            if (element is FirResolvedTypeRef) {
+                // Do not visit FirUserTypeRef, since it's not mappable to a type.
+                if (element.delegatedTypeRef != null && element.delegatedTypeRef !is FirUserTypeRef) {
+                    // not sure why this isn't taken care of by `FirResolvedTypeRefImpl#acceptChildren()`
+                    pending.addLast(PendingIndex(element.delegatedTypeRef, depth + 1, null))
                 }
-                depth--
-            }
-
-            override fun visitResolvedTypeRef(
-                resolvedTypeRef: FirResolvedTypeRef,
-                data: MutableMap<PsiElement, MutableList<FirInfo>>
-            ) {
-                super.visitResolvedTypeRef(resolvedTypeRef, data)
-                if (resolvedTypeRef.psi is KtTypeReference) {
-                    if (resolvedTypeRef.type is ConeClassLikeType) {
-                        if (resolvedTypeRef.type.typeArguments.isNotEmpty() && resolvedTypeRef.psi is KtTypeReference) {
-                            visitType(resolvedTypeRef.type, resolvedTypeRef.psi as KtTypeReference, data)
-                        }
-                    } else if (resolvedTypeRef.type is ConeTypeParameterType) {
+            }
+            children.clear()
+            element.acceptChildren(childCollector, children)
+            for (i in children.indices.reversed()) {
+                pending.addLast(PendingIndex(children[i], depth + 1, null))
+            }
+            children.clear()
+        }
+
+        override fun visitResolvedTypeRef(
+            resolvedTypeRef: FirResolvedTypeRef,
+            data: FirIndex
+        ) {
+            // The type arguments are mapped once the type reference and its children are indexed
+            pending.addLast(PendingIndex(null, depth) { mapTypeArguments(resolvedTypeRef, data) })
+            super.visitResolvedTypeRef(resolvedTypeRef, data)
+        }
+
+        private fun mapTypeArguments(resolvedTypeRef: FirResolvedTypeRef, data: FirIndex) {
+            if (resolvedTypeRef.psi is KtTypeReference) {
+                if (resolvedTypeRef.type is ConeClassLikeType) {
+                    if (resolvedTypeRef.type.typeArguments.isNotEmpty() && resolvedTypeRef.psi is KtTypeReference) {
                         visitType(resolvedTypeRef.type, resolvedTypeRef.psi as KtTypeReference, data)
                     }
+                } else if (resolvedTypeRef.type is ConeTypeParameterType) {
+                    visitType(resolvedTypeRef.type, resolvedTypeRef.psi as KtTypeReference, data)
                 }
             }
+        }
 
-            private fun visitType(firType: ConeTypeProjection, psiType: KtTypeReference,
-                                  data: MutableMap<PsiElement, MutableList<FirInfo>>) {
-                if (firType is ConeClassLikeType) {
-                    if (firType.classId != null) {
-                        mapParents(firType.classId!!, PsiTreeUtil.findChildOfType(psiType, KtUserType::class.java), data)
-                    }
-                    for (s in firType.attributes) {
-                        if (s is CustomAnnotationTypeAttribute && s.annotations.isNotEmpty()) {
-                            for (ann in s.annotations) {
-                                ann.accept(this, data)
-                            }
+        private fun visitType(firType: ConeTypeProjection, psiType: KtTypeReference, data: FirIndex) {
+            if (firType is ConeClassLikeType) {
+                if (firType.classId != null) {
+                    mapParents(firType.classId!!, PsiTreeUtil.findChildOfType(psiType, KtUserType::class.java), data)
+                }
+                for (s in firType.attributes) {
+                    if (s is CustomAnnotationTypeAttribute && s.annotations.isNotEmpty()) {
+                        for (ann in s.annotations) {
+                            ann.accept(this, data)
                         }
                     }
-                    val psiTypeArguments = psiType.typeElement!!.typeArgumentsAsTypes
-                    if (psiTypeArguments.size != firType.typeArguments.size) {
-                        return
-                    }
+                }
+                val psiTypeArguments = psiType.typeElement!!.typeArgumentsAsTypes
+                if (psiTypeArguments.size != firType.typeArguments.size) {
+                    return
+                }
 
-                    for ((index, typeArgument) in firType.typeArguments.withIndex()) {
-                        val psiTypeArgument = psiTypeArguments[index] ?: continue
-                        visitType(typeArgument, psiTypeArgument, data)
-                        when (typeArgument) {
-                            // ConeTypeProjection In and Out are generic types defined by keywords.
-                            // The bound is set in the map so that the GenericTypeVariable isn't returned by type mapping.
-                            is ConeKotlinTypeProjectionIn -> typeMap[psiTypeArgument] = typeArgument.type
-                            is ConeKotlinTypeProjectionOut -> typeMap[psiTypeArgument] = typeArgument.type
-                            else -> typeMap[psiTypeArgument] = typeArgument
-                        }
-                    }
-                } else {
-                    when (firType) {
+                for ((index, typeArgument) in firType.typeArguments.withIndex()) {
+                    val psiTypeArgument = psiTypeArguments[index] ?: continue
+                    visitType(typeArgument, psiTypeArgument, data)
+                    when (typeArgument) {
                         // ConeTypeProjection In and Out are generic types defined by keywords.
                         // The bound is set in the map so that the GenericTypeVariable isn't returned by type mapping.
-                        is ConeKotlinTypeProjectionIn -> typeMap[psiType] = firType.type
-                        is ConeKotlinTypeProjectionOut -> typeMap[psiType] = firType.type
-                        else -> typeMap[psiType] = firType
+                        is ConeKotlinTypeProjectionIn -> indexedTypes[psiTypeArgument] = typeArgument.type
+                        is ConeKotlinTypeProjectionOut -> indexedTypes[psiTypeArgument] = typeArgument.type
+                        else -> indexedTypes[psiTypeArgument] = typeArgument
                     }
                 }
+            } else {
+                when (firType) {
+                    // ConeTypeProjection In and Out are generic types defined by keywords.
+                    // The bound is set in the map so that the GenericTypeVariable isn't returned by type mapping.
+                    is ConeKotlinTypeProjectionIn -> indexedTypes[psiType] = firType.type
+                    is ConeKotlinTypeProjectionOut -> indexedTypes[psiType] = firType.type
+                    else -> indexedTypes[psiType] = firType
+                }
             }
+        }
 
-            private fun mapParents(firClassId: ClassId, psiType: KtUserType?,
-                                   data: MutableMap<PsiElement, MutableList<FirInfo>>) {
-                if (firClassId.outerClassId != null && psiType?.qualifier != null) {
-                    val fir = firClassId.outerClassId?.toSymbol(typeMapping.firSession)?.fir
-                    if (fir is FirClass && fir.nameOrSpecialName.asString() == psiType.qualifier!!.text &&
-                        psiType.qualifier!!.referenceExpression != null) {
-                        data.computeIfAbsent(psiType.qualifier!!.referenceExpression!!) { ArrayList() } += FirInfo(fir, 0)
-                        if (fir.classId.outerClassId != null && psiType.qualifier!!.qualifier != null) {
-                            mapParents(fir.classId, psiType.qualifier, data)
-                        }
+        private fun mapParents(firClassId: ClassId, psiType: KtUserType?, data: FirIndex) {
+            if (firClassId.outerClassId != null && psiType?.qualifier != null) {
+                val fir = synchronized(typeMapping.firLock) { firClassId.outerClassId?.let { typeMapping.symbolCache.toSymbol(it) }?.fir }
+                if (fir is FirClass && fir.nameOrSpecialName.asString() == psiType.qualifier!!.text &&
+                    psiType.qualifier!!.referenceExpression != null) {
+                    data.add(psiType.qualifier!!.referenceExpression!!, fir, 0)
+                    if (fir.classId.outerClassId != null && psiType.qualifier!!.qualifier != null) {
+                        mapParents(fir.classId, psiType.qualifier, data)
                     }
                 }
             }
-        }.visitFile(file, elementMap)
+        }
     }
 
     fun type(psiElement: PsiElement?, owner: FirElement?): JavaType? {
-        val parent = PsiTreeUtil.findFirstParent(psiElement) { it is KtTypeReference }
-        if (psiElement != null && !elementMap.containsKey(psiElement) &&
-            typeMap.isNotEmpty() && parent is KtTypeReference && typeMap.containsKey(parent)) {
-            return typeMapping.type(typeMap[parent], owner)
+        if (psiElement != null) {
+            ensureIndexed(psiElement)
+        }
+        if (psiElement != null && (declarationTypes.isNotEmpty() || fileTypes.isNotEmpty()) &&
+            !declarationIndex.contains(psiElement) && !fileIndex.contains(psiElement)) {
+            val parent = enclosingTypeReference(psiElement)
+            val parentType = if (parent == null) null else declarationTypes[parent] ?: fileTypes[parent]
+            if (parentType != null) {
+                return typeMapping.type(parentType, owner)
+            }
         }
         val fir = primary(psiElement)
         if (psiElement != null && fir is FirResolvedQualifier && fir.source != null && fir.source.psi is KtDotQualifiedExpression) {
@@ -163,6 +272,33 @@ class PsiElementAssociations(val typeMapping: KotlinTypeMapping, val file: FirFi
         return if (fir != null) typeMapping.type(fir, owner) else null
     }
 
+    /**
+     * The nearest [KtTypeReference] that is the element itself or one of its ancestors. Every element on the walked
+     * path is memoized with the result, so each element of the file is walked at most once.
+     */
+    private fun enclosingTypeReference(psi: PsiElement): KtTypeReference? {
+        var p: PsiElement? = psi
+        var result: Any = NO_TYPE_REFERENCE
+        val path = ArrayList<PsiElement>()
+        while (p != null) {
+            if (p is KtTypeReference) {
+                result = p
+                break
+            }
+            val memo = enclosingTypeReferences[p]
+            if (memo != null) {
+                result = memo
+                break
+            }
+            path.add(p)
+            p = p.parent
+        }
+        for (element in path) {
+            enclosingTypeReferences[element] = result
+        }
+        return result as? KtTypeReference
+    }
+
     private fun isPackage(psi: PsiElement, classId: ClassId): Boolean {
         return !classId.packageFqName.isRoot && psi.parent.text == classId.packageFqName.asString()
     }
@@ -275,8 +411,22 @@ class PsiElementAssociations(val typeMapping: KotlinTypeMapping, val file: FirFi
     }
 
     fun fir(psi: PsiElement?, filter: (FirElement) -> Boolean) : FirElement? {
+        if (psi != null) {
+            ensureIndexed(psi)
+        }
         var p = psi
-        while (p != null && !elementMap.containsKey(p)) {
+        var first = -1
+        var elementMap = fileIndex
+        while (p != null) {
+            first = declarationIndex.first(p)
+            if (first >= 0) {
+                elementMap = declarationIndex
+                break
+            }
+            first = fileIndex.first(p)
+            if (first >= 0) {
+                break
+            }
             p = p.parent
         }
 
@@ -284,64 +434,63 @@ class PsiElementAssociations(val typeMapping: KotlinTypeMapping, val file: FirFi
             return null
         }
 
-        val allFirInfos = elementMap[p]!!
-        val directFirInfos = allFirInfos.filter { filter.invoke(it.fir) }
-        return if (directFirInfos.isNotEmpty())
-            // It might be more reliable to have explicit mappings in case something changes.
-            return when {
-                directFirInfos.size == 1 -> directFirInfos[0].fir
-                else -> {
-                    return when (p) {
-                        is KtConstantExpression -> {
-                            directFirInfos.firstOrNull { it.fir is FirConstExpression<*> }?.fir
-                        }
-                        is KtImportDirective -> {
-                            directFirInfos.firstOrNull { it.fir is FirImport && it.fir !is FirErrorImport }?.fir
-                        }
-                        is KtNamedFunction -> {
-                            val found = directFirInfos.firstOrNull { it.fir is FirFunction }?.fir
-//                            if (found == null) {
-//                                // Review how to expose unmatched types without causing an error.
-//                            }
-                            found
-                        }
-                        is KtNameReferenceExpression, is KtTypeReference -> {
-                            val found = directFirInfos.firstOrNull { it.fir is FirResolvedTypeRef || it.fir is FirResolvedNamedReference }?.fir
-//                            if (found == null) {
-//                                // Review how to expose unmatched types without causing an error.
-//                            }
-                            found
-                        }
-                        is KtPropertyAccessor -> {
-                            val found = directFirInfos.firstOrNull { it.fir is FirDefaultPropertySetter }?.fir
-//                            if (found == null) {
-//                                // Review how to expose unmatched types without causing an error.
-//                            }
-                            found
-                        }
-                        else -> {
-                            directFirInfos[0].fir
-                        }
-                    }
+        var directCount = 0
+        var firstDirect: FirElement? = null
+        var entry = first
+        while (entry >= 0) {
+            val fir = elementMap.fir(entry)
+            if (filter.invoke(fir)) {
+                if (directCount++ == 0) {
+                    firstDirect = fir
                 }
             }
-        else if (allFirInfos.isNotEmpty()) {
-            return when {
-                allFirInfos.size == 1 -> allFirInfos[0].fir
-                // There isn't a RealPsiElement associated to the KT, so, we find the associated FIR element.
-                p is KtArrayAccessExpression -> allFirInfos.firstOrNull { it.fir is FirResolvedNamedReference && (it.fir.name.asString() == "get" || it.fir.name.asString() == "set") }?.fir
-                p is KtPrefixExpression -> allFirInfos.firstOrNull { it.fir is FirVariableAssignment }?.fir
-                p is KtPostfixExpression -> allFirInfos.firstOrNull { it.fir is FirResolvedTypeRef || it.fir is FirFunctionCall }?.fir
-                p is KtTypeReference -> allFirInfos.firstOrNull { it.fir is FirResolvedTypeRef }?.fir
-                p is KtWhenConditionInRange || p is KtBinaryExpression -> allFirInfos.firstOrNull { it.fir is FirFunctionCall }?.fir
-                p is KtNameReferenceExpression -> allFirInfos.firstOrNull { it.fir is FirClass }?.fir
-                else -> {
-                    throw IllegalStateException("Unable to determine the FIR element associated to the PSI." + if (psi == null) "null element" else "original PSI: ${psi.javaClass.name}, mapped PSI: ${p.javaClass.name}")
-                }
+            entry = elementMap.next(entry)
+        }
+
+        if (directCount > 0) {
+            if (directCount == 1) {
+                return firstDirect
+            }
+            // It might be more reliable to have explicit mappings in case something changes.
+            return when (p) {
+                is KtConstantExpression -> firstMatching(elementMap, first, filter) { it is FirConstExpression<*> }
+                is KtImportDirective -> firstMatching(elementMap, first, filter) { it is FirImport && it !is FirErrorImport }
+                // Review how to expose unmatched types without causing an error for the cases below.
+                is KtNamedFunction -> firstMatching(elementMap, first, filter) { it is FirFunction }
+                is KtNameReferenceExpression, is KtTypeReference -> firstMatching(elementMap, first, filter) { it is FirResolvedTypeRef || it is FirResolvedNamedReference }
+                is KtPropertyAccessor -> firstMatching(elementMap, first, filter) { it is FirDefaultPropertySetter }
+                else -> firstDirect
             }
         }
-        else
-            null
+
+        if (elementMap.next(first) < 0) {
+            return elementMap.fir(first)
+        }
+        val all: (FirElement) -> Boolean = { true }
+        return when (p) {
+            // There isn't a RealPsiElement associated to the KT, so, we find the associated FIR element.
+            is KtArrayAccessExpression -> firstMatching(elementMap, first, all) { it is FirResolvedNamedReference && (it.name.asString() == "get" || it.name.asString() == "set") }
+            is KtPrefixExpression -> firstMatching(elementMap, first, all) { it is FirVariableAssignment }
+            is KtPostfixExpression -> firstMatching(elementMap, first, all) { it is FirResolvedTypeRef || it is FirFunctionCall }
+            is KtTypeReference -> firstMatching(elementMap, first, all) { it is FirResolvedTypeRef }
+            is KtWhenConditionInRange, is KtBinaryExpression -> firstMatching(elementMap, first, all) { it is FirFunctionCall }
+            is KtNameReferenceExpression -> firstMatching(elementMap, first, all) { it is FirClass }
+            else -> {
+                throw IllegalStateException("Unable to determine the FIR element associated to the PSI." + if (psi == null) "null element" else "original PSI: ${psi.javaClass.name}, mapped PSI: ${p.javaClass.name}")
+            }
+        }
+    }
+
+    private inline fun firstMatching(elementMap: FirIndex, first: Int, filter: (FirElement) -> Boolean, predicate: (FirElement) -> Boolean): FirElement? {
+        var entry = first
+        while (entry >= 0) {
+            val fir = elementMap.fir(entry)
+            if (filter.invoke(fir) && predicate.invoke(fir)) {
+                return fir
+            }
+            entry = elementMap.next(entry)
+        }
+        return null
     }
 
     enum class ExpressionType {
@@ -388,27 +537,140 @@ class PsiElementAssociations(val typeMapping: KotlinTypeMapping, val file: FirFi
 
     override fun toString(): String {
         val sb = StringBuilder()
-        elementMap.forEach{ (psi, firs) ->
-            sb.append(psi.customToString()).append("\n")
-            firs.forEach{ fir ->
-                sb.append("  - $fir\n")
+        for (elementMap in listOf(fileIndex, declarationIndex)) {
+            elementMap.forEachKey { psi, first ->
+                sb.append(psi.customToString()).append("\n")
+                var entry = first
+                while (entry >= 0) {
+                    sb.append("  - FIR(${elementMap.depth(entry)}, ${PsiTreePrinter.printFirElement(elementMap.fir(entry))})\n")
+                    entry = elementMap.next(entry)
+                }
+                sb.append("\n")
             }
-            sb.append("\n")
         }
         return sb.toString()
     }
 
-    private class FirInfo(
-        val fir: FirElement,
-        val depth: Int,
-    ) {
-        override fun toString(): String {
-            val s = PsiTreePrinter.printFirElement(fir)
-            return "FIR($depth, $s)"
+    /**
+     * The FIR elements associated to each PSI element, in the order in which they were visited.
+     * <p>
+     * PSI elements are hashed by identity into an open-addressing table, and the FIR elements of each PSI element
+     * are chained through primitive arrays, so the index allocates no objects per association.
+     */
+    private class FirIndex {
+        private var keys = arrayOfNulls<PsiElement>(1024)
+        private var heads = IntArray(1024)
+        private var tails = IntArray(1024)
+        private var keyCount = 0
+
+        private var firs = arrayOfNulls<FirElement>(1024)
+        private var depths = IntArray(1024)
+        private var nexts = IntArray(1024)
+        private var size = 0
+
+        fun add(psi: PsiElement, fir: FirElement, depth: Int) {
+            if (size == firs.size) {
+                firs = firs.copyOf(size * 2)
+                depths = depths.copyOf(size * 2)
+                nexts = nexts.copyOf(size * 2)
+            }
+            val entry = size++
+            firs[entry] = fir
+            depths[entry] = depth
+            nexts[entry] = -1
+
+            var slot = slot(psi)
+            if (keys[slot] == null) {
+                if ((keyCount + 1) * 2 > keys.size) {
+                    rehash()
+                    slot = slot(psi)
+                }
+                keys[slot] = psi
+                heads[slot] = entry
+                keyCount++
+            } else {
+                nexts[tails[slot]] = entry
+            }
+            tails[slot] = entry
+        }
+
+        operator fun contains(psi: PsiElement): Boolean = keys[slot(psi)] != null
+
+        /**
+         * Removes all associations, keeping the capacity for the next declaration.
+         */
+        fun clear() {
+            keys.fill(null)
+            firs.fill(null, 0, size)
+            keyCount = 0
+            size = 0
+        }
+
+        /**
+         * @return The first entry associated to the PSI element, or -1.
+         */
+        fun first(psi: PsiElement): Int {
+            val slot = slot(psi)
+            return if (keys[slot] == null) -1 else heads[slot]
+        }
+
+        /**
+         * @return The entry after the given one for the same PSI element, or -1.
+         */
+        fun next(entry: Int): Int = nexts[entry]
+
+        fun fir(entry: Int): FirElement = firs[entry]!!
+
+        fun depth(entry: Int): Int = depths[entry]
+
+        fun forEachKey(action: (PsiElement, Int) -> Unit) {
+            for (slot in keys.indices) {
+                val key = keys[slot]
+                if (key != null) {
+                    action(key, heads[slot])
+                }
+            }
+        }
+
+        private fun slot(psi: PsiElement): Int {
+            val mask = keys.size - 1
+            var slot = mix(System.identityHashCode(psi)) and mask
+            while (true) {
+                val key = keys[slot]
+                if (key == null || key === psi) {
+                    return slot
+                }
+                slot = (slot + 1) and mask
+            }
+        }
+
+        private fun rehash() {
+            val oldKeys = keys
+            val oldHeads = heads
+            val oldTails = tails
+            keys = arrayOfNulls(oldKeys.size * 2)
+            heads = IntArray(oldKeys.size * 2)
+            tails = IntArray(oldKeys.size * 2)
+            for (i in oldKeys.indices) {
+                val key = oldKeys[i]
+                if (key != null) {
+                    val slot = slot(key)
+                    keys[slot] = key
+                    heads[slot] = oldHeads[i]
+                    tails[slot] = oldTails[i]
+                }
+            }
+        }
+
+        private fun mix(hash: Int): Int {
+            val h = hash * -0x61c88647
+            return h xor (h ushr 16)
         }
     }
 
     companion object {
+        private val NO_TYPE_REFERENCE = Any()
+
         fun printElement(firElement: FirElement) : String {
             if (firElement is FirSingleExpressionBlock) {
                 return PsiTreePrinter.firElementToString(firElement.statement) ?: ""
@@ -15,9 +15,55 @@
  */
 package org.openrewrite.kotlin;
 
+import org.jetbrains.kotlin.com.intellij.lang.ASTNode;
+import org.jetbrains.kotlin.com.intellij.openapi.Disposable;
+import org.jetbrains.kotlin.com.intellij.openapi.util.Disposer;
+import org.jetbrains.kotlin.fir.declarations.FirFile;
+import org.jetbrains.kotlin.fir.declarations.FirProperty;
+import org.jetbrains.kotlin.name.ClassId;
+import org.jetbrains.kotlin.psi.KtClass;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.psi.KtNamedFunction;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.Parser;
+import org.openrewrite.SourceFile;
+import org.openrewrite.java.JavaParser;
+import org.openrewrite.java.internal.JavaTypeCache;
+import org.openrewrite.java.internal.TypesInUse;
+import org.openrewrite.java.tree.Comment;
+import org.openrewrite.java.tree.JavaType;
+import org.openrewrite.java.tree.Space;
+import org.openrewrite.java.tree.TypeUtils;
+import org.openrewrite.kotlin.internal.*;
+import org.openrewrite.kotlin.tree.K;
 import org.openrewrite.test.RewriteTest;
+import org.openrewrite.test.TypeValidation;
+import org.openrewrite.tree.ParsingExecutionContextView;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.openrewrite.kotlin.Assertions.kotlin;
 
 class KotlinParserTest implements RewriteTest {
@@ -40,4 +86,548 @@ class KotlinParserTest implements RewriteTest {
         );
     }
 
+    @Test
+    void dependsOnIsNotConvertedToLst() {
+        List<Path> parsed = new ArrayList<>();
+        InMemoryExecutionContext ctx = new InMemoryExecutionContext();
+        ParsingExecutionContextView.view(ctx).setParsingListener((input, sourceFile) -> parsed.add(sourceFile.getSourcePath()));
+        List<SourceFile> cus = KotlinParser.builder()
+          .dependsOn("package foo.bar\n\nclass MyClass")
+          .build()
+          .parse(ctx, "import foo.bar.MyClass\n\nval myClass: MyClass? = null")
+          .collect(toList());
+        assertThat(cus).singleElement().isInstanceOf(K.CompilationUnit.class);
+        assertThat(parsed).containsExactly(cus.get(0).getSourcePath());
+    }
+
+    @Test
+    void syntaxOnly() {
+        String source = "class A {\n    fun f(l: List<String>) = l.map { it.length }\n}\n";
+        List<SourceFile> cus = KotlinParser.builder().syntaxOnly(true).build()
+          .parse(new InMemoryExecutionContext(), source)
+          .collect(toList());
+        assertThat(cus).singleElement().isInstanceOf(K.CompilationUnit.class);
+        K.CompilationUnit cu = (K.CompilationUnit) cus.get(0);
+        assertThat(cu.printAll()).isEqualTo(source);
+        assertThat(cu.getClasses().get(0).getType()).isNull();
+    }
+
+    @Test
+    void reparseOnlyConvertsChangedSourcesAndTheirDependents() {
+        KotlinParser parser = KotlinParser.builder().build();
+        Parser.Input a = Parser.Input.fromString(Paths.get("p/A.kt"), "package p\n\nclass A {\n    fun a() = 1\n}\n");
+        Parser.Input b = Parser.Input.fromString(Paths.get("p/B.kt"), "package p\n\nfun b() = A().a()\n");
+        Parser.Input c = Parser.Input.fromString(Paths.get("q/C.kt"), "package q\n\nfun c() = 2\n");
+
+        KotlinParseResult initial = parser.parseIncrementally(List.of(a, b, c), null, new InMemoryExecutionContext());
+        assertThat(initial.getSourceFiles()).allMatch(K.CompilationUnit.class::isInstance);
+        assertThat(initial.getConverted()).hasSize(3);
+
+        Parser.Input changedA = Parser.Input.fromString(Paths.get("p/A.kt"), "package p\n\nclass A {\n    fun a() = \"1\"\n    fun added() = 2\n}\n");
+        KotlinParseResult reparsed = parser.reparse(initial, List.of(changedA), List.of(), null, new InMemoryExecutionContext());
+        assertThat(reparsed.getConverted()).containsExactlyInAnyOrder(Paths.get("p/A.kt"), Paths.get("p/B.kt"));
+        assertThat(reparsed.getSourceFile(Paths.get("q/C.kt"))).isSameAs(initial.getSourceFile(Paths.get("q/C.kt")));
+        assertThat(reparsed.getSourceFile(Paths.get("p/A.kt")).printAll()).contains("\"1\"");
+
+        // The types of A were cached by the initial parse, and must reflect the new declarations
+        K.CompilationUnit cuA = (K.CompilationUnit) reparsed.getSourceFile(Paths.get("p/A.kt"));
+        JavaType.FullyQualified typeA = cuA.getClasses().get(0).getType();
+        assertThat(typeA.getMethods()).extracting(JavaType.Method::getName).contains("added");
+
+        K.CompilationUnit cuB = (K.CompilationUnit) reparsed.getSourceFile(Paths.get("p/B.kt"));
+        JavaType.Method a = cuB.getTypesInUse().getUsedMethods().stream()
+          .filter(m -> m.getName().equals("a"))
+          .findAny()
+          .orElseThrow();
+        assertThat(a.getDeclaringType().getMethods()).extracting(JavaType.Method::getName).contains("added");
+        assertThat(TypeUtils.isOfClassType(a.getReturnType(), "kotlin.String")).isTrue();
+    }
+
+    @Test
+    void chunkedParsingResolvesImportsFromOtherChunks() {
+        String a = "package p\n\nclass A\n";
+        String b = "package q\n\nimport p.A\n\nval a: A? = null\n";
+        // Just short of fitting both sources, so each chunk holds a single source, and the
+        // smaller imported source fits into the context half of the budget
+        long budget = KotlinChunkPlanner.ESTIMATED_HEAP_BYTES_PER_SOURCE_BYTE * (a.length() + b.length()) - 1;
+        List<SourceFile> cus = KotlinParser.builder().heapBudget(budget).build()
+          .parse(new InMemoryExecutionContext(), a, b)
+          .collect(toList());
+        assertThat(cus).hasSize(2).allMatch(K.CompilationUnit.class::isInstance);
+        K.CompilationUnit cuB = (K.CompilationUnit) cus.get(1);
+        assertThat(cuB.getTypesInUse().getTypesInUse())
+          .anyMatch(type -> TypeUtils.isOfClassType(type, "p.A"));
+    }
+
+    @Test
+    void chunkedParsingKeepsInputOrder() {
+        Parser.Input a = Parser.Input.fromString(Paths.get("p/A.kt"), "package p\n\nclass A\n");
+        Parser.Input b = Parser.Input.fromString(Paths.get("q/B.kt"), "package q\n\nclass B\n");
+        Parser.Input c = Parser.Input.fromString(Paths.get("p/C.kt"), "package p\n\nclass C\n");
+        // Every source is a chunk of its own, and the chunks group the sources of package p
+        List<SourceFile> cus = KotlinParser.builder().heapBudget(1).build()
+          .parseInputs(List.of(a, b, c), null, new InMemoryExecutionContext())
+          .collect(toList());
+        assertThat(cus).extracting(SourceFile::getSourcePath)
+          .containsExactly(Paths.get("p/A.kt"), Paths.get("q/B.kt"), Paths.get("p/C.kt"));
+    }
+
+    @Test
+    void chunkedParsingKeepsInputOrderOfSamePaths() {
+        // Sources given as text without a class share the same path
+        Path path = Paths.get("openRewriteFile.kt");
+        String a = "package p\n\nval a = 1\n";
+        String b = "package q\n\nval b = 2\n";
+        String c = "package p\n\nval c = 3\n";
+        List<SourceFile> cus = KotlinParser.builder().heapBudget(1).build()
+          .parseInputs(List.of(Parser.Input.fromString(path, a), Parser.Input.fromString(path, b), Parser.Input.fromString(path, c)),
+            null, new InMemoryExecutionContext())
+          .collect(toList());
+        assertThat(cus).allMatch(K.CompilationUnit.class::isInstance)
+          .extracting(SourceFile::printAll)
+          .containsExactly(a, b, c);
+    }
+
+    @Test
+    void eachInputIsReadOnce() {
+        AtomicInteger opens = new AtomicInteger();
+        byte[] source = "class A {\n    val s = \"ü\"\n}\n".getBytes(StandardCharsets.UTF_8);
+        Parser.Input input = new Parser.Input(Paths.get("A.kt"), null, () -> {
+            opens.incrementAndGet();
+            return new ByteArrayInputStream(source);
+        }, false);
+
+        List<SourceFile> cus = KotlinParser.builder().build()
+          .parseInputs(List.of(input), null, new InMemoryExecutionContext())
+          .collect(toList());
+        assertThat(cus).singleElement().isInstanceOf(K.CompilationUnit.class);
+        assertThat(cus.get(0).getCharset()).isEqualTo(StandardCharsets.UTF_8);
+        assertThat(opens.get()).isEqualTo(1);
+    }
+
+    @Test
+    void eachInputIsReadOnceWhenChunked() {
+        AtomicInteger opensA = new AtomicInteger();
+        AtomicInteger opensB = new AtomicInteger();
+        String a = "package p\n\nclass A\n";
+        String b = "package p\n\nval a: A? = null\n";
+        // Each source is a chunk of its own, with the other source as context
+        long budget = KotlinChunkPlanner.ESTIMATED_HEAP_BYTES_PER_SOURCE_BYTE * (a.length() + b.length()) - 1;
+
+        List<SourceFile> cus = KotlinParser.builder().heapBudget(budget).build()
+          .parseInputs(List.of(countingInput("p/A.kt", a, opensA), countingInput("p/B.kt", b, opensB)),
+            null, new InMemoryExecutionContext())
+          .collect(toList());
+        assertThat(cus).hasSize(2).allMatch(K.CompilationUnit.class::isInstance);
+        assertThat(opensA.get()).isEqualTo(1);
+        assertThat(opensB.get()).isEqualTo(1);
+    }
+
+    private static Parser.Input countingInput(String path, String source, AtomicInteger opens) {
+        return new Parser.Input(Paths.get(path), null, () -> {
+            opens.incrementAndGet();
+            return new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8));
+        }, false);
+    }
+
+    @Test
+    void nodeAtOffset() {
+        Disposable disposable = Disposer.newDisposable();
+        try {
+            String text = "class A {\n    fun a() = 1\n}\n";
+            CompiledSource compiled = KotlinParser.builder().build().parse(
+              List.of(Parser.Input.fromString(Paths.get("A.kt"), text)), disposable, new InMemoryExecutionContext());
+            KotlinSource source = compiled.getSources().iterator().next();
+
+            // The file, its package directive and the class all start at 0, and the outermost one wins
+            assertThat(source.nodeAt(0)).isNotNull().extracting(ASTNode::getPsi).isInstanceOf(KtFile.class);
+            assertThat(source.nodeAt(text.indexOf("fun"))).isNotNull().extracting(ASTNode::getPsi).isInstanceOf(KtNamedFunction.class);
+            assertThat(source.nodeAt(text.indexOf('\n'))).isNull();
+            assertThat(source.nodeAt(text.length())).isNull();
+        } finally {
+            Disposer.dispose(disposable);
+        }
+    }
+
+    @Test
+    void associationsIndexOneTopLevelDeclarationAtATime() {
+        Disposable disposable = Disposer.newDisposable();
+        try {
+            CompiledSource compiled = KotlinParser.builder().build().parse(
+              List.of(Parser.Input.fromString(Paths.get("A.kt"), "class A\n\nfun f(a: A) = a.toString()\n")), disposable, new InMemoryExecutionContext());
+            KotlinSource source = compiled.getSources().iterator().next();
+            FirFile firFile = source.getFirFile();
+            assertThat(firFile).isNotNull();
+            KtClass a = (KtClass) source.getKtFile().getDeclarations().get(0);
+            KtNamedFunction f = (KtNamedFunction) source.getKtFile().getDeclarations().get(1);
+
+            KotlinTypeMapping typeMapping = new KotlinTypeMapping(new JavaTypeCache(), compiled.getFirSession(), firFile);
+            PsiElementAssociations associations = new PsiElementAssociations(typeMapping, firFile);
+            associations.initialize();
+            assertThat(associations.getIndexedDeclaration()).isNull();
+
+            JavaType.Method method = associations.methodDeclarationType(f);
+            assertThat(method).isNotNull();
+            assertThat(TypeUtils.isOfClassType(method.getParameterTypes().get(0), "A")).isTrue();
+            assertThat(associations.getIndexedDeclaration()).isSameAs(f);
+
+            assertThat(TypeUtils.isOfClassType(associations.type(a, null), "A")).isTrue();
+            assertThat(associations.getIndexedDeclaration()).isSameAs(a);
+
+            // A released declaration is indexed again
+            assertThat(associations.methodDeclarationType(f)).isNotNull();
+            assertThat(associations.getIndexedDeclaration()).isSameAs(f);
+        } finally {
+            Disposer.dispose(disposable);
+        }
+    }
+
+    @Test
+    void repeatedLookupsAreMemoizedPerFile() {
+        InMemoryExecutionContext ctx = new InMemoryExecutionContext();
+        Disposable disposable = Disposer.newDisposable();
+        try {
+            CompiledSource compiled = KotlinParser.builder().build().parse(
+              List.of(Parser.Input.fromString(Paths.get("A.kt"), "val l: List<String> = listOf()\n")), disposable, ctx);
+            KotlinSource source = compiled.getSources().iterator().next();
+            FirFile firFile = source.getFirFile();
+            assertThat(firFile).isNotNull();
+            FirProperty property = (FirProperty) firFile.getDeclarations().get(0);
+
+            KotlinTypeMapping typeMapping = new KotlinTypeMapping(new JavaTypeCache(), compiled.getFirSession(), firFile);
+            JavaType.Variable first = typeMapping.variableType(property, firFile);
+            long hits = typeMapping.getMemoHits();
+            long misses = typeMapping.getMemoMisses();
+            assertThat(typeMapping.variableType(property, firFile)).isSameAs(first);
+            assertThat(typeMapping.getMemoHits()).isEqualTo(hits + 1);
+            assertThat(typeMapping.getMemoMisses()).isEqualTo(misses);
+        } finally {
+            Disposer.dispose(disposable);
+        }
+    }
+
+    @Test
+    void typeMappingStatisticsAreAggregated() {
+        KotlinParser parser = KotlinParser.builder().build();
+        parser.parse(new InMemoryExecutionContext(), "val l: List<String> = listOf()\n", "val s = listOf(\"a\").first()\n")
+          .collect(toList());
+        KotlinParser.TypeMappingStatistics statistics = parser.getTypeMappingStatistics();
+        assertThat(statistics.getMemoMisses()).isPositive();
+        assertThat(statistics.getMemoHits()).isNotNegative();
+        assertThat(statistics.getSymbolCacheMisses()).isPositive();
+        assertThat(statistics.getSymbolCacheHits()).isNotNegative();
+
+        parser.reset();
+        assertThat(parser.getTypeMappingStatistics()).isEqualTo(new KotlinParser.TypeMappingStatistics(0, 0, 0, 0));
+    }
+
+    @Test
+    void classIdSymbolCache() {
+        Disposable disposable = Disposer.newDisposable();
+        try {
+            CompiledSource compiled = KotlinParser.builder().build().parse(
+              List.of(Parser.Input.fromString(Paths.get("A.kt"), "class A\n")), disposable, new InMemoryExecutionContext());
+            ClassIdSymbolCache symbolCache = new ClassIdSymbolCache(compiled.getFirSession());
+
+            ClassId list = ClassId.fromString("kotlin/collections/List");
+            assertThat(symbolCache.toSymbol(list)).isNotNull().isSameAs(symbolCache.toSymbol(list));
+            ClassId missing = ClassId.fromString("does/not/Exist");
+            assertThat(symbolCache.toSymbol(missing)).isNull();
+            assertThat(symbolCache.toSymbol(missing)).isNull();
+
+            assertThat(symbolCache.getMissCount()).isEqualTo(2);
+            assertThat(symbolCache.getHitCount()).isEqualTo(2);
+            assertThat(symbolCache.getHitRate()).isEqualTo(0.5);
+        } finally {
+            Disposer.dispose(disposable);
+        }
+    }
+
+    @Test
+    void reuseCompilerEnvironmentFromSessionPool(@TempDir Path tempDir) throws Exception {
+        Path jar = tempDir.resolve("lib.jar");
+        writeJar(jar, "a.txt", "a");
+        try (KotlinParserSessionPool pool = new KotlinParserSessionPool()) {
+            List<Path> classpath = new ArrayList<>();
+            classpath.add(jar);
+            KotlinParser parser = KotlinParser.builder().classpath(classpath).sessionPool(pool).build();
+
+            assertThat(parser.parse(new InMemoryExecutionContext(), "class A").collect(toList()))
+              .singleElement().isInstanceOf(K.CompilationUnit.class);
+            KotlinCompilerEnvironment environment = pool.idleEnvironments().get(0);
+
+            assertThat(parser.parse(new InMemoryExecutionContext(), "class B").collect(toList()))
+              .singleElement().isInstanceOf(K.CompilationUnit.class);
+            assertThat(pool.idleEnvironments()).singleElement().isSameAs(environment);
+            assertThat(pool.size()).isEqualTo(1);
+
+            // A jar that is rebuilt in place must not be served from the environment of its previous contents
+            writeJar(jar, "a.txt", "changed");
+            Files.setLastModifiedTime(jar, FileTime.fromMillis(Files.getLastModifiedTime(jar).toMillis() + 10_000));
+            assertThat(parser.parse(new InMemoryExecutionContext(), "class C").collect(toList()))
+              .singleElement().isInstanceOf(K.CompilationUnit.class);
+            assertThat(pool.idleEnvironments()).hasSize(2).contains(environment);
+            assertThat(pool.size()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void sessionPoolKeepsEnvironmentsOfLibraryCachesApart(@TempDir Path tempDir) throws Exception {
+        Path jar = tempDir.resolve("lib.jar");
+        writeJar(jar, "a.txt", "a");
+        try (KotlinParserSessionPool pool = new KotlinParserSessionPool()) {
+            List<Path> classpath = new ArrayList<>();
+            classpath.add(jar);
+            KotlinParser.Builder builder = KotlinParser.builder().classpath(classpath).sessionPool(pool);
+            KotlinParser first = builder.clone().libraryCache(new KotlinLibraryCache(tempDir.resolve("first"))).build();
+            KotlinParser second = builder.clone().libraryCache(new KotlinLibraryCache(tempDir.resolve("second"))).build();
+
+            assertThat(first.parse(new InMemoryExecutionContext(), "class A").collect(toList()))
+              .singleElement().isInstanceOf(K.CompilationUnit.class);
+            assertThat(second.parse(new InMemoryExecutionContext(), "class B").collect(toList()))
+              .singleElement().isInstanceOf(K.CompilationUnit.class);
+            assertThat(pool.size()).isEqualTo(2);
+
+            // A parser with the same library cache directory reuses the environment
+            KotlinParser firstAgain = builder.clone().libraryCache(new KotlinLibraryCache(tempDir.resolve("first"))).build();
+            assertThat(firstAgain.parse(new InMemoryExecutionContext(), "class C").collect(toList()))
+              .singleElement().isInstanceOf(K.CompilationUnit.class);
+            assertThat(pool.size()).isEqualTo(2);
+        }
+    }
+
+    private static void writeJar(Path jar, String entry, String content) throws Exception {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new JarEntry(entry));
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+    }
+
+    @Test
+    void concurrentParsersShareLibraryTypes() throws Exception {
+        KotlinParser.Builder builder = KotlinParser.builder().typeCache(new ConcurrentJavaTypeCache());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<K.CompilationUnit>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String source = "class A" + i + " {\n    val l: List<String> = listOf(\"" + i + "\")\n}\n";
+                KotlinParser parser = builder.clone().build();
+                futures.add(executor.submit(() -> (K.CompilationUnit) parser.parse(new InMemoryExecutionContext(), source)
+                  .collect(toList())
+                  .get(0)));
+            }
+            JavaType.FullyQualified list = null;
+            for (Future<K.CompilationUnit> future : futures) {
+                K.CompilationUnit cu = future.get();
+                JavaType.FullyQualified type = cu.getTypesInUse().getTypesInUse().stream()
+                  .map(TypeUtils::asFullyQualified)
+                  .filter(fq -> fq != null && "kotlin.collections.List".equals(fq.getFullyQualifiedName()))
+                  .findFirst()
+                  .orElseThrow();
+                if (list == null) {
+                    list = type;
+                }
+                assertThat(type).isSameAs(list);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void typeCacheSnapshot(@TempDir Path dir) {
+        Path snapshot = dir.resolve("types.gz");
+        int written = KotlinTypeCacheSnapshot.write(snapshot, null, List.of("kotlin.collections.List"), new InMemoryExecutionContext());
+        assertThat(written).isGreaterThan(0);
+
+        JavaTypeCache typeCache = new JavaTypeCache();
+        assertThat(KotlinTypeCacheSnapshot.load(snapshot, null, typeCache)).isTrue();
+        JavaType.Class list = typeCache.get("kotlin.collections.List");
+        assertThat(list).isNotNull();
+        assertThat(list.getMethods()).isNotEmpty();
+        assertThat(KotlinTypeCacheSnapshot.load(snapshot, List.of(dir.resolve("other.jar")), new JavaTypeCache())).isFalse();
+
+        JavaTypeCache parserTypeCache = new JavaTypeCache();
+        KotlinParser parser = KotlinParser.builder().typeCache(parserTypeCache).typeCacheSnapshot(snapshot).build();
+        JavaType.Class loaded = parserTypeCache.get("kotlin.collections.List");
+        assertThat(loaded).isNotNull();
+        List<SourceFile> cus = parser
+          .parse(new InMemoryExecutionContext(), "val l: List<String> = listOf()")
+          .collect(toList());
+        assertThat(cus).singleElement().isInstanceOf(K.CompilationUnit.class);
+
+        // The LST refers to the loaded type instead of a type mapped again
+        JavaType.FullyQualified used = ((K.CompilationUnit) cus.get(0)).getTypesInUse().getTypesInUse().stream()
+          .map(TypeUtils::asFullyQualified)
+          .filter(fq -> fq != null && "kotlin.collections.List".equals(fq.getFullyQualifiedName()))
+          .findAny()
+          .orElseThrow();
+        assertThat(used instanceof JavaType.Parameterized ? ((JavaType.Parameterized) used).getType() : used).isSameAs(loaded);
+        assertThat(parserTypeCache.<JavaType.Class>get("kotlin.collections.List")).isSameAs(loaded);
+    }
+
+    @Test
+    void libraryCache(@TempDir Path dir) throws Exception {
+        KotlinLibraryCache libraryCache = new KotlinLibraryCache(dir.resolve("cache"));
+        List<Path> classpath = JavaParser.dependenciesFromClasspath("javapoet");
+        String source = "import com.squareup.javapoet.ClassName\n\nval c: ClassName? = null\n";
+        for (int i = 0; i < 2; i++) {
+            List<SourceFile> cus = KotlinParser.builder().classpath(classpath).libraryCache(libraryCache).build()
+              .parse(new InMemoryExecutionContext(), source)
+              .collect(toList());
+            assertThat(cus).singleElement().isInstanceOf(K.CompilationUnit.class);
+            assertThat(((K.CompilationUnit) cus.get(0)).getTypesInUse().getTypesInUse())
+              .anyMatch(type -> TypeUtils.isOfClassType(type, "com.squareup.javapoet.ClassName"));
+        }
+
+        // The archive written by the first parse is reused by the second one
+        Path archive = libraryCache.resolve(classpath.get(0));
+        try (Stream<Path> archives = Files.list(libraryCache.getDirectory())) {
+            assertThat(archives.collect(toList())).contains(archive).allMatch(path -> path.toString().endsWith(".jar"));
+        }
+        try (JarFile jar = new JarFile(archive.toFile())) {
+            assertThat(jar.stream().collect(toList()))
+              .allMatch(entry -> entry.getMethod() == ZipEntry.STORED)
+              .allMatch(entry -> entry.getName().endsWith(".class") || entry.getName().startsWith("META-INF/"));
+        }
+    }
+
+    @Test
+    void libraryTypeDepth() {
+        String source = "fun f(s: String) = s.length\n";
+        JavaTypeCache typeCache = new JavaTypeCache();
+        JavaType.FullyQualified string = kotlinString(KotlinParser.builder().typeCache(typeCache).libraryTypeDepth(1).build(), source);
+        assertThat(string.getMethods()).isNotEmpty();
+        assertThat(charSequence(string).getMethods()).isEmpty();
+        assertThat(typeCache.size()).isZero();
+
+        // A parser that maps all library members never receives the shallow classes of a bounded parser
+        JavaType.FullyQualified fullString = kotlinString(KotlinParser.builder().typeCache(typeCache).build(), source);
+        assertThat(charSequence(fullString).getMethods()).isNotEmpty();
+    }
+
+    private static JavaType.FullyQualified kotlinString(KotlinParser parser, String source) {
+        List<SourceFile> cus = parser.parse(new InMemoryExecutionContext(), source).collect(toList());
+        assertThat(cus).singleElement().isInstanceOf(K.CompilationUnit.class);
+        List<JavaType.FullyQualified> strings = ((K.CompilationUnit) cus.get(0)).getTypesInUse().getTypesInUse().stream()
+          .map(TypeUtils::asFullyQualified)
+          .filter(fq -> fq != null && "kotlin.String".equals(fq.getFullyQualifiedName()))
+          .collect(toList());
+        assertThat(strings).isNotEmpty();
+        return strings.get(0);
+    }
+
+    private static JavaType.FullyQualified charSequence(JavaType.FullyQualified string) {
+        List<JavaType.FullyQualified> charSequences = string.getInterfaces().stream()
+          .filter(i -> "kotlin.CharSequence".equals(i.getFullyQualifiedName()))
+          .collect(toList());
+        assertThat(charSequences).singleElement();
+        return charSequences.get(0);
+    }
+
+    @Test
+    void deduplicateTypesOfSeparateParsers() {
+        List<SourceFile> sourceFiles = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            // Parsers built separately do not share a type cache
+            KotlinParser.builder().build()
+              .parse(new InMemoryExecutionContext(), "fun f" + i + "(s: String) = s.length\n")
+              .forEach(sourceFiles::add);
+        }
+        KotlinTypeDeduplication.Report before = KotlinTypeDeduplication.report(sourceFiles);
+        assertThat(before.getDuplicates()).isGreaterThan(0);
+
+        List<SourceFile> deduplicated = KotlinTypeDeduplication.deduplicate(sourceFiles);
+        KotlinTypeDeduplication.Report after = KotlinTypeDeduplication.report(deduplicated);
+        assertThat(after.getDuplicates()).isZero();
+        assertThat(after.getReferences()).isEqualTo(before.getReferences());
+        assertThat(deduplicated).extracting(SourceFile::printAll).containsExactlyElementsOf(
+          sourceFiles.stream().map(SourceFile::printAll).collect(toList()));
+    }
+
+    @Test
+    void deduplicationKeepsClassesWithDifferentMembers() {
+        String source = "fun f(s: String) = s.length\n";
+        List<SourceFile> sourceFiles = new ArrayList<>();
+        // The CharSequence of a bounded parser has no members
+        KotlinParser.builder().libraryTypeDepth(1).build().parse(new InMemoryExecutionContext(), source).forEach(sourceFiles::add);
+        KotlinParser.builder().build().parse(new InMemoryExecutionContext(), source).forEach(sourceFiles::add);
+
+        List<SourceFile> deduplicated = KotlinTypeDeduplication.deduplicate(sourceFiles);
+        JavaType.FullyQualified fullString = ((K.CompilationUnit) deduplicated.get(1)).getTypesInUse().getTypesInUse().stream()
+          .map(TypeUtils::asFullyQualified)
+          .filter(fq -> fq != null && "kotlin.String".equals(fq.getFullyQualifiedName()))
+          .findAny()
+          .orElseThrow();
+        assertThat(charSequence(fullString).getMethods()).isNotEmpty();
+    }
+
+    @Test
+    void commonWhitespaceIsShared() {
+        List<SourceFile> cus = KotlinParser.builder().build()
+          .parse(new InMemoryExecutionContext(),
+            "class A {\n    val a = 1\n}\n",
+            "class B {\n    // comment\n    val b = 2\n}\n")
+          .collect(toList());
+        Space a = ((K.CompilationUnit) cus.get(0)).getClasses().get(0).getBody().getStatements().get(0).getPrefix();
+        Space b = ((K.CompilationUnit) cus.get(1)).getClasses().get(0).getBody().getStatements().get(0).getPrefix();
+        assertThat(a.getWhitespace()).isEqualTo("\n    ");
+        assertThat(b.getWhitespace()).isEqualTo("\n    ");
+        assertThat(b.getComments()).singleElement().extracting(Comment::getSuffix).isEqualTo("\n    ");
+        // Space.build shares the instances of short whitespace without comments
+        assertThat(a).isSameAs(Space.build("\n    ", List.of()));
+        assertThat(((K.CompilationUnit) cus.get(1)).getClasses().get(0).getBody().getEnd())
+          .isSameAs(((K.CompilationUnit) cus.get(0)).getClasses().get(0).getBody().getEnd());
+    }
+
+    @Test
+    void concurrentConversionMatchesSequential() {
+        String[] sources = new String[20];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = "package p\n\nclass A" + i + " {\n    fun f(l: List<String>) = l.map { it.length + " + i + " }\n}\n";
+        }
+        List<SourceFile> sequential = KotlinParser.builder().build()
+          .parse(new InMemoryExecutionContext(), sources)
+          .collect(toList());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<SourceFile> ordered = KotlinParser.builder().conversionExecutor(executor).build()
+              .parse(new InMemoryExecutionContext(), sources)
+              .collect(toList());
+            assertThat(ordered).allMatch(K.CompilationUnit.class::isInstance);
+            assertThat(ordered).extracting(SourceFile::printAll)
+              .containsExactlyElementsOf(sequential.stream().map(SourceFile::printAll).collect(toList()));
+            assertThat(ordered).extracting(KotlinParserTest::typesInUse)
+              .containsExactlyElementsOf(sequential.stream().map(KotlinParserTest::typesInUse).collect(toList()));
+            for (SourceFile cu : ordered) {
+                Assertions.validateTypes(cu, TypeValidation.all());
+            }
+
+            List<SourceFile> unordered = KotlinParser.builder().conversionExecutor(executor).orderedResults(false).build()
+              .parse(new InMemoryExecutionContext(), sources)
+              .collect(toList());
+            assertThat(unordered).extracting(KotlinParserTest::typesInUse)
+              .containsExactlyInAnyOrderElementsOf(sequential.stream().map(KotlinParserTest::typesInUse).collect(toList()));
+            for (SourceFile cu : unordered) {
+                Assertions.validateTypes(cu, TypeValidation.all());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * The printed source followed by the signatures of all types, methods and variables it uses, in a stable order.
+     */
+    private static String typesInUse(SourceFile sourceFile) {
+        TypesInUse typesInUse = ((K.CompilationUnit) sourceFile).getTypesInUse();
+        return sourceFile.printAll() + Stream.of(typesInUse.getTypesInUse(), typesInUse.getDeclaredMethods(),
+            typesInUse.getUsedMethods(), typesInUse.getVariables())
+          .flatMap(Set::stream)
+          .map(JavaType::toString)
+          .sorted()
+          .collect(joining("\n", "\n", ""));
+    }
 }
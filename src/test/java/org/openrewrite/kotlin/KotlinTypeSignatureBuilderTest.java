@@ -192,6 +192,16 @@ public class KotlinTypeSignatureBuilderTest {
                 .isEqualTo("org.openrewrite.kotlin.KotlinTypeGoat{name=parameterizedField,type=org.openrewrite.kotlin.PT<org.openrewrite.kotlin.KotlinTypeGoat$TypeA>}");
     }
 
+    @Test
+    void memoizedParameterizedSignature() {
+        FirProperty property = getProperty("parameterizedField");
+        assertThat(property).isNotNull();
+        KotlinTypeSignatureBuilder builder = signatureBuilder();
+        String first = builder.signature(property.getReturnTypeRef());
+        assertThat(first).isEqualTo("org.openrewrite.kotlin.PT<org.openrewrite.kotlin.KotlinTypeGoat$TypeA>");
+        assertThat(builder.signature(property.getReturnTypeRef())).isSameAs(first);
+    }
+
     @Test
     void fieldType() {
         assertThat(fieldSignature("field"))
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.kotlin.internal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClasspathFingerprintTest {
+
+    @Test
+    void sameJarContentHasSameHash(@TempDir Path tempDir) throws Exception {
+        Path jar = writeJar(tempDir.resolve("a/lib.jar"), "p/A.class", "A");
+        Path copy = tempDir.resolve("b/lib.jar");
+        Files.createDirectories(copy.getParent());
+        Files.copy(jar, copy);
+
+        assertThat(ClasspathFingerprint.of(List.of(jar))).isEqualTo(ClasspathFingerprint.of(List.of(jar)));
+        assertThat(ClasspathFingerprint.of(List.of(jar))).isEqualTo(ClasspathFingerprint.of(List.of(copy)));
+    }
+
+    @Test
+    void touchedJarHasNewHash(@TempDir Path tempDir) throws Exception {
+        Path jar = writeJar(tempDir.resolve("lib.jar"), "p/A.class", "A");
+        ClasspathFingerprint before = ClasspathFingerprint.of(List.of(jar));
+
+        writeJar(jar, "p/A.class", "B");
+        touch(jar);
+        assertThat(ClasspathFingerprint.of(List.of(jar))).isNotEqualTo(before);
+    }
+
+    @Test
+    void nestedClassChangeInDirectoryHasNewHash(@TempDir Path tempDir) throws Exception {
+        Path nested = tempDir.resolve("classes/p/q/A.class");
+        Files.createDirectories(nested.getParent());
+        Files.write(nested, "A".getBytes(StandardCharsets.UTF_8));
+        ClasspathFingerprint before = ClasspathFingerprint.of(List.of(tempDir.resolve("classes")));
+        assertThat(ClasspathFingerprint.of(List.of(tempDir.resolve("classes")))).isEqualTo(before);
+
+        // Only the file changes, not the modification time of the directory on the classpath
+        FileTime directoryModified = Files.getLastModifiedTime(tempDir.resolve("classes"));
+        Files.write(nested, "B".getBytes(StandardCharsets.UTF_8));
+        touch(nested);
+        Files.setLastModifiedTime(tempDir.resolve("classes"), directoryModified);
+        assertThat(ClasspathFingerprint.of(List.of(tempDir.resolve("classes")))).isNotEqualTo(before);
+    }
+
+    private static Path writeJar(Path jar, String entry, String content) throws Exception {
+        Files.createDirectories(jar.getParent());
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new JarEntry(entry));
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        return jar;
+    }
+
+    private static void touch(Path path) throws Exception {
+        Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 10_000));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2024 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openrewrite.kotlin.internal;
+
+import org.junit.jupiter.api.Test;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.Parser;
+
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.openrewrite.kotlin.internal.KotlinChunkPlanner.ESTIMATED_HEAP_BYTES_PER_SOURCE_BYTE;
+
+class KotlinChunkPlannerTest {
+
+    @Test
+    void importedPackagesAreContext() {
+        Parser.Input a = Parser.Input.fromString(Paths.get("p/A.kt"), "package p\n\nclass A\n");
+        String source = "package q\n\nimport p.A\n\nval a: A? = null\n";
+        Parser.Input b = Parser.Input.fromString(Paths.get("q/B.kt"), source);
+
+        List<KotlinChunkPlanner.Chunk> chunks = new KotlinChunkPlanner(2 * ESTIMATED_HEAP_BYTES_PER_SOURCE_BYTE * source.length())
+          .plan(List.of(a, b), new InMemoryExecutionContext());
+
+        assertThat(chunks).hasSize(2);
+        assertThat(chunks.get(1).getSources()).containsExactly(b);
+        assertThat(chunks.get(1).getContext()).containsExactly(a);
+    }
+
+    @Test
+    void commentsStringsAndFileAnnotationsAreNotDirectives() {
+        Parser.Input a = Parser.Input.fromString(Paths.get("p/A.kt"), "package p\n\nclass A\n");
+        String source = """
+          #!/usr/bin/env kotlin
+          /* package p /* nested */ import p.A */
+          @file:Suppress("import p.A", ""\"package p""\")
+          @file:[JvmName("R") JvmMultifileClass]
+          package r // import p.A
+
+          // import p.A
+          val s = ""\"
+          import p.A
+          ""\"
+          """;
+        Parser.Input r = Parser.Input.fromString(Paths.get("r/R.kt"), source);
+
+        List<KotlinChunkPlanner.Chunk> chunks = new KotlinChunkPlanner(2 * ESTIMATED_HEAP_BYTES_PER_SOURCE_BYTE * source.length())
+          .plan(List.of(a, r), new InMemoryExecutionContext());
+
+        assertThat(chunks).hasSize(2);
+        assertThat(chunks.get(1).getSources()).containsExactly(r);
+        assertThat(chunks.get(1).getContext()).isEmpty();
+    }
+}
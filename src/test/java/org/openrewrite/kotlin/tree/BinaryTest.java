@@ -18,9 +18,16 @@ package org.openrewrite.kotlin.tree;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.openrewrite.InMemoryExecutionContext;
 import org.openrewrite.Issue;
+import org.openrewrite.SourceFile;
+import org.openrewrite.kotlin.KotlinParser;
 import org.openrewrite.test.RewriteTest;
 
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.openrewrite.kotlin.Assertions.kotlin;
 
 @SuppressWarnings({"KotlinConstantConditions", "ControlFlowWithEmptyBody"})
@@ -363,4 +370,22 @@ class BinaryTest implements RewriteTest {
           )
         );
     }
+
+    // Parsed and printed directly, since the visitors of a rewrite run recurse into every operand. The lengths are
+    // just above the length from which the printer prints a chain in a loop, and far above it.
+    @ParameterizedTest
+    @ValueSource(ints = {257, 2_000})
+    void longConcatenation(int length) {
+        StringBuilder source = new StringBuilder("val s = \"0\"");
+        for (int i = 1; i < length; i++) {
+            source.append(i % 10 == 0 ? " +\n    \"" : " + \"").append(i).append('"');
+        }
+        source.append(" + (1 + 2 + 3) ?: \"\"\n");
+
+        List<SourceFile> cus = KotlinParser.builder().build()
+          .parse(new InMemoryExecutionContext(), source.toString())
+          .collect(toList());
+        assertThat(cus).singleElement().isInstanceOf(K.CompilationUnit.class);
+        assertThat(cus.get(0).printAll()).isEqualTo(source.toString());
+    }
 }
@@ -73,6 +73,22 @@ class CRLFTest implements RewriteTest {
         );
     }
 
+    @Test
+    void crlfInKdocTags() {
+        rewriteRun(
+          kotlin(
+            "/**\r\n" +
+              " * Foo\r\n" +
+              " * @param a the\r\n" +
+              " *   first parameter\r\n" +
+              " * @return nothing\r\n" +
+              " */\r\n" +
+              "fun test(a: Int) {\r\n" +
+              "}"
+          )
+        );
+    }
+
     @Test
     void crlfInBlockComment() {
         rewriteRun(
@@ -112,4 +128,18 @@ class CRLFTest implements RewriteTest {
           )
         );
     }
+
+    @Test
+    void manyCRLFMixedWithLF() {
+        StringBuilder source = new StringBuilder("/**\r\n * Docs\r\n *\n * More docs\r\n */\r\nclass A {\r\n");
+        for (int i = 0; i < 200; i++) {
+            source.append("    // comment ").append(i).append(i % 3 == 0 ? "\n" : "\r\n")
+              .append("    val v").append(i).append(" = \"\"\"\r\n        line\n        line\r\n    \"\"\"\r\n\r\n");
+        }
+        source.append("}\r\n");
+
+        rewriteRun(
+          kotlin(source.toString())
+        );
+    }
 }
@@ -16,12 +16,20 @@
 package org.openrewrite.kotlin.tree;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.openrewrite.InMemoryExecutionContext;
 import org.openrewrite.Issue;
+import org.openrewrite.SourceFile;
 import org.openrewrite.java.tree.J;
+import org.openrewrite.kotlin.KotlinParser;
 import org.openrewrite.kotlin.marker.IndexedAccess;
 import org.openrewrite.test.RewriteTest;
 import org.openrewrite.test.TypeValidation;
 
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.openrewrite.kotlin.Assertions.kotlin;
 
@@ -940,4 +948,27 @@ class MethodInvocationTest implements RewriteTest {
           )
         );
     }
+
+    // Parsed and printed directly, since the visitors of a rewrite run recurse into every select. The lengths are
+    // just above the length from which the printer prints a chain in a loop, and far above it.
+    @ParameterizedTest
+    @ValueSource(ints = {257, 2_000})
+    void longCallChain(int length) {
+        StringBuilder source = new StringBuilder("""
+          class Builder {
+              fun add(n: Int): Builder = this
+          }
+          val b = Builder()\
+          """);
+        for (int i = 0; i < length; i++) {
+            source.append(i % 10 == 0 ? "\n    ." : ".").append("add(").append(i).append(')');
+        }
+        source.append("?.add(0)\n");
+
+        List<SourceFile> cus = KotlinParser.builder().build()
+          .parse(new InMemoryExecutionContext(), source.toString())
+          .collect(toList());
+        assertThat(cus).singleElement().isInstanceOf(K.CompilationUnit.class);
+        assertThat(cus.get(0).printAll()).isEqualTo(source.toString());
+    }
 }
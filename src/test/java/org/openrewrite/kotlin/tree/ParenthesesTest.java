@@ -83,4 +83,20 @@ class ParenthesesTest implements RewriteTest {
           )
         );
     }
+
+    @Test
+    void parenthesizedTypesOfManyMembers() {
+        StringBuilder source = new StringBuilder("class A {\n");
+        for (int i = 0; i < 200; i++) {
+            source.append("    @Suppress(\"unused\") private var v").append(i).append(" : ( ( Int ) ? ) = null\n")
+              .append("    internal fun f").append(i).append("(p : ( ( String ) -> Unit ) ?) {\n")
+              .append("        val (a) = Pair(").append(i).append(", 0)\n")
+              .append("    }\n");
+        }
+        source.append("}\n");
+
+        rewriteRun(
+          kotlin(source.toString())
+        );
+    }
 }